@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.thingworx.types.InfoTable;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.models.V1Pod;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of listPods when many mashups call it at once on the same Thing: all threads share one client, its
+ * connection pool, dispatcher and request coalescer; with a coalesceTtl, most calls are answered without an API
+ * request. Run with -t to change the number of callers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ConcurrentListPodsBenchmark {
+    @Param({"1000"})
+    public int podCount;
+
+    @Param({"500"})
+    public int pageSize;
+
+    @Param({"5"})
+    public long latencyMillis;
+
+    @Param({"5", "20"})
+    public int connections;
+
+    @Param({"0", "1000"})
+    public long coalesceTtl;
+
+    @Param({"projected"})
+    public String decoding;
+
+    private MockKubeApiServer _server;
+    private ApiClient _client;
+    private CoreV1Api _api;
+    private ResourceRowMapper<V1Pod> _mapper;
+    private RequestCoalescer _coalescer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _server = new MockKubeApiServer(podCount, 0, 0, 0, latencyMillis);
+        _server.start();
+        ClientMetrics metrics = new ClientMetrics();
+        _client = KubeClientFactory.createClient(_server.getConnectionSettings(connections), metrics);
+        _api = new CoreV1Api(_client);
+        _mapper = SyntheticResources.podRowMapper();
+        _coalescer = new RequestCoalescer(coalesceTtl, metrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        KubeClientFactory.closeClient(_client);
+        _server.close();
+    }
+
+    @Benchmark
+    public InfoTable listPods() throws Exception {
+        InfoTable it = new InfoTable();
+        KubeThing.appendPods(_api, _coalescer, SyntheticResources.NAMESPACE, null, null, pageSize, _mapper, ProjectedDecoder.Mode.parse(decoding), it);
+        return it;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.JSON;
+import io.kubernetes.client.models.V1PodList;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one pod list response into model objects, with the plain decoder of the client and with the metered
+ * decoder the Thing uses, whose difference is the cost of the client metrics; and into the values of the synthetic
+ * DataShape only, with the projected decoder.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+    @Param({"100", "500", "10000"})
+    public int podCount;
+
+    private String _body;
+    private JSON _plain;
+    private JSON _metered;
+    private ProjectedDecoder _projected;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _body = SyntheticResources.listJson("PodList", SyntheticResources.podsJson(podCount), 0, 0, "1");
+        _plain = new JSON();
+        _metered = new ClientMetrics().json();
+        _projected = SyntheticResources.podRowMapper().getDecoder();
+    }
+
+    @Benchmark
+    public V1PodList decode() {
+        return _plain.deserialize(_body, V1PodList.class);
+    }
+
+    @Benchmark
+    public V1PodList decodeMetered() {
+        return _metered.deserialize(_body, V1PodList.class);
+    }
+
+    @Benchmark
+    public ResourceInformer.ListPage<Object[]> decodeProjected() throws IOException {
+        return _projected.read(new StringReader(_body));
+    }
+}
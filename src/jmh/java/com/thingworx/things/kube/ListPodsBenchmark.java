@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.thingworx.types.InfoTable;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.models.V1Pod;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of the listPods service against the mock API server: paged requests, decoding and row building,
+ * through the same client and code path as the Thing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListPodsBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int podCount;
+
+    @Param({"500"})
+    public int pageSize;
+
+    @Param({"0"})
+    public long latencyMillis;
+
+    @Param({"model", "projected"})
+    public String decoding;
+
+    private MockKubeApiServer _server;
+    private ApiClient _client;
+    private CoreV1Api _api;
+    private ResourceRowMapper<V1Pod> _mapper;
+    private RequestCoalescer _coalescer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _server = new MockKubeApiServer(podCount, 0, 0, 0, latencyMillis);
+        _server.start();
+        ClientMetrics metrics = new ClientMetrics();
+        _client = KubeClientFactory.createClient(_server.getConnectionSettings(5), metrics);
+        _api = new CoreV1Api(_client);
+        _mapper = SyntheticResources.podRowMapper();
+        _coalescer = new RequestCoalescer(0, metrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        KubeClientFactory.closeClient(_client);
+        _server.close();
+    }
+
+    @Benchmark
+    public InfoTable listPods() throws Exception {
+        InfoTable it = new InfoTable();
+        KubeThing.appendPods(_api, _coalescer, SyntheticResources.NAMESPACE, null, null, pageSize, _mapper, ProjectedDecoder.Mode.parse(decoding), it);
+        return it;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1Service;
+import okio.Buffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A stand-in for the Kubernetes API server on a local port. Serves synthetic pod, service and deployment lists, with
+ * limit and continue paging, pod logs, the deployment scale subresource, and the pod and node usage of the
+ * metrics.k8s.io API; every response is delayed by the configured latency.
+ * <p>
+ * List pages are assembled once and kept, so the server costs the benchmark little more than the socket writes.
+ */
+final class MockKubeApiServer implements Closeable {
+    private static final String RESOURCE_VERSION = "424242";
+
+    private final MockWebServer _server = new MockWebServer();
+    private final long _latencyMillis;
+    private final int _podCount;
+    private final List<String> _pods;
+    private final List<String> _services;
+    private final List<String> _deployments;
+    private final byte[] _log;
+    private final Map<String, byte[]> _pages = new ConcurrentHashMap<>();
+    private volatile long _metricsTime;
+    private volatile int _metricsFirstPod;
+    private volatile int _metricsPodCount;
+
+    MockKubeApiServer(int pods, int services, int deployments, int logLines, long latencyMillis) {
+        this._latencyMillis = latencyMillis;
+        this._podCount = pods;
+        this._metricsPodCount = pods;
+        this._pods = SyntheticResources.podsJson(pods);
+        List<V1Service> serviceItems = new ArrayList<>(services);
+        for (int i = 0; i < services; i++) {
+            serviceItems.add(SyntheticResources.service(i));
+        }
+        this._services = SyntheticResources.toJson(serviceItems);
+        List<V1Deployment> deploymentItems = new ArrayList<>(deployments);
+        for (int i = 0; i < deployments; i++) {
+            deploymentItems.add(SyntheticResources.deployment(i));
+        }
+        this._deployments = SyntheticResources.toJson(deploymentItems);
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < logLines; i++) {
+            log.append(SyntheticResources.logLine(i)).append('\n');
+        }
+        this._log = log.toString().getBytes(StandardCharsets.UTF_8);
+        // MockWebServer logs every request at INFO
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+        _server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request);
+            }
+        });
+    }
+
+    void start() throws IOException {
+        _server.start();
+    }
+
+    /**
+     * Returns connection settings pointing at this server, with the given number of pooled connections and no rate
+     * limit.
+     */
+    KubeConnectionSettings getConnectionSettings(int connections) {
+        return new KubeConnectionSettings(_server.getHostName(), _server.getPort(), false, null, null,
+                KubeConnectionSettings.DEFAULT_TIMEOUT, connections, (int) KubeConnectionSettings.DEFAULT_KEEP_ALIVE_DURATION, connections,
+                0, 0, 0);
+    }
+
+    /**
+     * Makes the metrics.k8s.io API report the usage taken at the given time, or at the time of each request when 0.
+     */
+    void setMetricsTime(long time) {
+        this._metricsTime = time;
+    }
+
+    /**
+     * Makes the metrics.k8s.io API report count pods from the given index instead of all pods.
+     */
+    void setMetricsPods(int first, int count) {
+        this._metricsFirstPod = first;
+        this._metricsPodCount = count;
+    }
+
+    int getRequestCount() {
+        return _server.getRequestCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _server.shutdown();
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        HttpUrl url = HttpUrl.parse("http://localhost" + request.getPath());
+        List<String> segments = url.pathSegments();
+        String last = segments.get(segments.size() - 1);
+        MockResponse response;
+        if (segments.contains("metrics.k8s.io")) {
+            // usage changes with every request, so metrics lists are not kept
+            long time = _metricsTime > 0 ? _metricsTime : System.currentTimeMillis();
+            response = "nodes".equals(last) ? json(SyntheticResources.nodeMetricsJson(Math.min(100, _podCount), time).getBytes(StandardCharsets.UTF_8))
+                    : json(SyntheticResources.podMetricsJson(_metricsFirstPod, _metricsPodCount, time).getBytes(StandardCharsets.UTF_8));
+        } else if ("log".equals(last)) {
+            response = text(_log, url.queryParameter("limitBytes"));
+        } else if ("scale".equals(last) && "PATCH".equals(request.getMethod())) {
+            String name = segments.get(segments.size() - 2);
+            response = json(("{\"kind\":\"Scale\",\"apiVersion\":\"autoscaling/v1\",\"metadata\":{\"name\":\"" + name
+                    + "\",\"namespace\":\"" + SyntheticResources.NAMESPACE + "\"},\"spec\":{\"replicas\":1},\"status\":{\"replicas\":1}}")
+                    .getBytes(StandardCharsets.UTF_8));
+        } else if ("pods".equals(last)) {
+            response = list("PodList", _pods, url);
+        } else if ("services".equals(last)) {
+            response = list("ServiceList", _services, url);
+        } else if ("deployments".equals(last)) {
+            response = list("DeploymentList", _deployments, url);
+        } else {
+            response = new MockResponse().setResponseCode(404)
+                    .setBody("{\"kind\":\"Status\",\"status\":\"Failure\",\"reason\":\"NotFound\",\"code\":404}");
+        }
+        if (_latencyMillis > 0) {
+            response.setBodyDelay(_latencyMillis, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private MockResponse list(String kind, List<String> items, HttpUrl url) {
+        String continueToken = url.queryParameter("continue");
+        String limitParameter = url.queryParameter("limit");
+        int offset = continueToken == null ? 0 : Integer.parseInt(continueToken);
+        int limit = limitParameter == null ? 0 : Integer.parseInt(limitParameter);
+        byte[] page = _pages.computeIfAbsent(kind + "/" + offset + "/" + limit, k ->
+                SyntheticResources.listJson(kind, items, offset, limit, RESOURCE_VERSION).getBytes(StandardCharsets.UTF_8));
+        return json(page);
+    }
+
+    private static MockResponse json(byte[] body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(new Buffer().write(body));
+    }
+
+    private static MockResponse text(byte[] body, String limitBytes) {
+        int length = limitBytes == null ? body.length : Math.min(body.length, Integer.parseInt(limitBytes));
+        return new MockResponse().setHeader("Content-Type", "text/plain").setBody(new Buffer().write(body, 0, length));
+    }
+}
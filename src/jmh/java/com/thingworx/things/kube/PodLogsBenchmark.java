@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getPodLogs against the mock API server: a bounded, line by line read of a log of logLines lines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PodLogsBenchmark {
+    @Param({"1000", "100000"})
+    public int logLines;
+
+    @Param({"1048576"})
+    public int limitBytes;
+
+    private MockKubeApiServer _server;
+    private ApiClient _client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _server = new MockKubeApiServer(0, 0, 0, logLines, 0L);
+        _server.start();
+        _client = KubeClientFactory.createClient(_server.getConnectionSettings(5), new ClientMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        KubeClientFactory.closeClient(_client);
+        _server.close();
+    }
+
+    @Benchmark
+    public String getPodLogs() throws Exception {
+        return PodLogs.read(_client, SyntheticResources.NAMESPACE, "app-0-00000000", null, null, null, limitBytes, false);
+    }
+}
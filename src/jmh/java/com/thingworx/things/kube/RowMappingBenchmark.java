@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.models.V1Pod;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of decoded pods into InfoTable rows, and the one-time compilation of a DataShape into a row mapper.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMappingBenchmark {
+    @Param({"100", "10000"})
+    public int podCount;
+
+    private List<V1Pod> _pods;
+    private ResourceRowMapper<V1Pod> _mapper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _pods = new ArrayList<>(podCount);
+        for (int i = 0; i < podCount; i++) {
+            _pods.add(SyntheticResources.pod(i));
+        }
+        _mapper = SyntheticResources.podRowMapper();
+    }
+
+    @Benchmark
+    public void toRows(Blackhole blackhole) throws Exception {
+        for (V1Pod pod : _pods) {
+            blackhole.consume(_mapper.toRow(pod));
+        }
+    }
+
+    @Benchmark
+    public ResourceRowMapper<V1Pod> compile() {
+        return SyntheticResources.podRowMapper();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.thingworx.metadata.DataShapeDefinition;
+import com.thingworx.types.BaseTypes;
+import io.kubernetes.client.JSON;
+import io.kubernetes.client.custom.IntOrString;
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.models.*;
+import org.joda.time.DateTime;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pods, services, deployments and log lines shaped like those of a real cluster, for the benchmarks. Objects are
+ * deterministic: the same index always gives the same object.
+ */
+final class SyntheticResources {
+    static final String NAMESPACE = "bench";
+    private static final JSON JSON_SERIALIZER = new JSON();
+    private static final DateTime CREATED = new DateTime(2019, 1, 1, 0, 0);
+
+    private SyntheticResources() {
+    }
+
+    static V1Pod pod(int index) {
+        String app = "app-" + (index % 50);
+        Map<String, String> labels = new HashMap<>();
+        labels.put("app", app);
+        labels.put("tier", index % 3 == 0 ? "frontend" : "backend");
+        labels.put("pod-template-hash", Integer.toHexString(app.hashCode()));
+        V1ObjectMeta metadata = new V1ObjectMeta()
+                .name(String.format("%s-%08d", app, index))
+                .namespace(NAMESPACE)
+                .uid(uid(index))
+                .resourceVersion(String.valueOf(100000 + index))
+                .creationTimestamp(CREATED.plusSeconds(index))
+                .labels(labels)
+                .annotations(singletonMap("kubernetes.io/psp", "restricted"))
+                .ownerReferences(Arrays.asList(new V1OwnerReference().apiVersion("apps/v1").kind("ReplicaSet")
+                        .name(app + "-rs").uid(uid(index % 50)).controller(true).blockOwnerDeletion(true)));
+
+        List<V1Container> containers = new ArrayList<>();
+        List<V1ContainerStatus> statuses = new ArrayList<>();
+        for (String name : new String[]{"main", "sidecar"}) {
+            containers.add(new V1Container()
+                    .name(name)
+                    .image("registry.example.com/" + app + "/" + name + ":1." + (index % 7))
+                    .ports(Arrays.asList(new V1ContainerPort().containerPort(8080).protocol("TCP").name("http")))
+                    .env(Arrays.asList(new V1EnvVar().name("APP").value(app), new V1EnvVar().name("INDEX").value(String.valueOf(index))))
+                    .resources(new V1ResourceRequirements()
+                            .requests(quantities("100m", "128Mi"))
+                            .limits(quantities("500m", "512Mi")))
+                    .imagePullPolicy("IfNotPresent"));
+            statuses.add(new V1ContainerStatus()
+                    .name(name)
+                    .image("registry.example.com/" + app + "/" + name + ":1." + (index % 7))
+                    .imageID("docker-pullable://registry.example.com/" + app + "@sha256:" + uid(index))
+                    .containerID("docker://" + uid(index + 1))
+                    .ready(true)
+                    .restartCount(index % 5)
+                    .state(new V1ContainerState().running(new V1ContainerStateRunning().startedAt(CREATED.plusMinutes(1)))));
+        }
+
+        List<V1PodCondition> conditions = new ArrayList<>();
+        for (String type : new String[]{"Initialized", "Ready", "ContainersReady", "PodScheduled"}) {
+            conditions.add(new V1PodCondition().type(type).status("True").lastTransitionTime(CREATED.plusMinutes(1)));
+        }
+        return new V1Pod()
+                .apiVersion("v1")
+                .kind("Pod")
+                .metadata(metadata)
+                .spec(new V1PodSpec()
+                        .nodeName("node-" + (index % 100))
+                        .serviceAccountName("default")
+                        .restartPolicy("Always")
+                        .containers(containers))
+                .status(new V1PodStatus()
+                        .phase(index % 100 == 99 ? "Failed" : "Running")
+                        .hostIP("10.0." + (index % 100) + ".1")
+                        .podIP("10.1." + (index / 250 % 250) + "." + (index % 250))
+                        .qosClass("Burstable")
+                        .startTime(CREATED.plusSeconds(index))
+                        .conditions(conditions)
+                        .containerStatuses(statuses));
+    }
+
+    static V1Service service(int index) {
+        String app = "app-" + (index % 50);
+        return new V1Service()
+                .apiVersion("v1")
+                .kind("Service")
+                .metadata(new V1ObjectMeta()
+                        .name(String.format("svc-%08d", index))
+                        .namespace(NAMESPACE)
+                        .uid(uid(index))
+                        .resourceVersion(String.valueOf(200000 + index))
+                        .creationTimestamp(CREATED.plusSeconds(index))
+                        .labels(singletonMap("app", app)))
+                .spec(new V1ServiceSpec()
+                        .type("ClusterIP")
+                        .clusterIP("10.96." + (index / 250 % 250) + "." + (index % 250))
+                        .selector(singletonMap("app", app))
+                        .ports(Arrays.asList(new V1ServicePort().name("http").port(80).protocol("TCP").targetPort(new IntOrString(8080)))));
+    }
+
+    static V1Deployment deployment(int index) {
+        String app = "app-" + index;
+        int replicas = 1 + index % 5;
+        return new V1Deployment()
+                .apiVersion("apps/v1")
+                .kind("Deployment")
+                .metadata(new V1ObjectMeta()
+                        .name(app)
+                        .namespace(NAMESPACE)
+                        .uid(uid(index))
+                        .resourceVersion(String.valueOf(300000 + index))
+                        .creationTimestamp(CREATED.plusSeconds(index))
+                        .labels(singletonMap("app", app)))
+                .spec(new V1DeploymentSpec()
+                        .replicas(replicas)
+                        .selector(new V1LabelSelector().matchLabels(singletonMap("app", app)))
+                        .template(new V1PodTemplateSpec()
+                                .metadata(new V1ObjectMeta().labels(singletonMap("app", app)))
+                                .spec(pod(index).getSpec())))
+                .status(new V1DeploymentStatus()
+                        .replicas(replicas)
+                        .readyReplicas(replicas)
+                        .availableReplicas(replicas)
+                        .updatedReplicas(replicas)
+                        .observedGeneration(1L));
+    }
+
+    static String logLine(int index) {
+        return CREATED.plusMillis(index * 10).toString() + " INFO  [worker-" + (index % 8) + "] processed request " + index
+                + " in " + (index % 97) + "ms status=200 path=/api/v1/items/" + (index % 1000);
+    }
+
+    /**
+     * Returns a PodMetricsList of the metrics.k8s.io API for count pods from the given index, and a NodeMetricsList for
+     * the first count nodes, taken at the given time. The usage of each object changes with the time.
+     */
+    static String podMetricsJson(int first, int count, long time) {
+        String timestamp = Instant.ofEpochMilli(time).toString();
+        StringBuilder body = new StringBuilder(64 + count * 300).append("{\"kind\":\"PodMetricsList\",\"apiVersion\":\"metrics.k8s.io/v1beta1\",\"metadata\":{},\"items\":[");
+        for (int i = first; i < first + count; i++) {
+            String app = "app-" + (i % 50);
+            body.append(i > first ? "," : "").append("{\"metadata\":{\"name\":\"").append(String.format("%s-%08d", app, i))
+                    .append("\",\"namespace\":\"").append(NAMESPACE).append("\"},\"timestamp\":\"").append(timestamp)
+                    .append("\",\"window\":\"30s\",\"containers\":[");
+            for (String name : new String[]{"main", "sidecar"}) {
+                body.append("main".equals(name) ? "" : ",").append("{\"name\":\"").append(name).append("\",\"usage\":{\"cpu\":\"")
+                        .append(usage(i, time, 500000)).append("n\",\"memory\":\"").append(usage(i, time, 262144)).append("Ki\"}}");
+            }
+            body.append("]}");
+        }
+        return body.append("]}").toString();
+    }
+
+    static String nodeMetricsJson(int count, long time) {
+        String timestamp = Instant.ofEpochMilli(time).toString();
+        StringBuilder body = new StringBuilder(64 + count * 200).append("{\"kind\":\"NodeMetricsList\",\"apiVersion\":\"metrics.k8s.io/v1beta1\",\"metadata\":{},\"items\":[");
+        for (int i = 0; i < count; i++) {
+            body.append(i > 0 ? "," : "").append("{\"metadata\":{\"name\":\"node-").append(i).append("\"},\"timestamp\":\"")
+                    .append(timestamp).append("\",\"window\":\"30s\",\"usage\":{\"cpu\":\"").append(usage(i, time, 4000))
+                    .append("m\",\"memory\":\"").append(usage(i, time, 16384)).append("Mi\"}}");
+        }
+        return body.append("]}").toString();
+    }
+
+    /**
+     * Serializes items of a list the way the API server does, one JSON document per item, so that list bodies can be
+     * assembled from slices without decoding.
+     */
+    static List<String> toJson(List<?> items) {
+        List<String> json = new ArrayList<>(items.size());
+        for (Object item : items) {
+            json.add(JSON_SERIALIZER.serialize(item));
+        }
+        return json;
+    }
+
+    static List<String> podsJson(int count) {
+        List<V1Pod> pods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pods.add(pod(i));
+        }
+        return toJson(pods);
+    }
+
+    /**
+     * Returns the body of a list response holding the given slice of items.
+     */
+    static String listJson(String kind, List<String> items, int offset, int limit, String resourceVersion) {
+        int end = limit <= 0 ? items.size() : Math.min(items.size(), offset + limit);
+        StringBuilder body = new StringBuilder(64 + (end - offset) * (items.isEmpty() ? 0 : items.get(0).length() + 1));
+        body.append("{\"kind\":\"").append(kind).append("\",\"apiVersion\":\"v1\",\"metadata\":{\"resourceVersion\":\"")
+                .append(resourceVersion).append('"');
+        if (end < items.size()) {
+            body.append(",\"continue\":\"").append(end).append('"');
+        }
+        body.append("},\"items\":[");
+        for (int i = offset; i < end; i++) {
+            if (i > offset) {
+                body.append(',');
+            }
+            body.append(items.get(i));
+        }
+        return body.append("]}").toString();
+    }
+
+    /**
+     * A row mapper for the fields of a typical pod list DataShape: names, phase, addresses, times and labels. The fields
+     * are given directly, as the DataShape classes of the extension SDK are not functional outside the platform.
+     */
+    static ResourceRowMapper<V1Pod> podRowMapper() {
+        return ResourceRowMapper.compile(new DataShapeDefinition(), Arrays.asList(
+                new ResourceRowMapper.Field("podName", null, BaseTypes.STRING),
+                new ResourceRowMapper.Field("namespace", null, BaseTypes.STRING),
+                new ResourceRowMapper.Field("podStatus", null, BaseTypes.STRING),
+                new ResourceRowMapper.Field("podIP", null, BaseTypes.STRING),
+                new ResourceRowMapper.Field("nodeName", "$.spec.nodeName", BaseTypes.STRING),
+                new ResourceRowMapper.Field("image", "$.spec.containers[0].image", BaseTypes.STRING),
+                new ResourceRowMapper.Field("restartCount", "$.status.containerStatuses[0].restartCount", BaseTypes.INTEGER),
+                new ResourceRowMapper.Field("startTime", null, BaseTypes.DATETIME),
+                new ResourceRowMapper.Field("labels", "$.metadata.labels", BaseTypes.JSON)), V1Pod.class);
+    }
+
+    private static Map<String, Quantity> quantities(String cpu, String memory) {
+        Map<String, Quantity> quantities = new HashMap<>();
+        quantities.put("cpu", Quantity.fromString(cpu));
+        quantities.put("memory", Quantity.fromString(memory));
+        return quantities;
+    }
+
+    private static Map<String, String> singletonMap(String key, String value) {
+        Map<String, String> map = new HashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    private static long usage(int index, long time, long max) {
+        return 1 + (index * 7919L + time / 1000) % max;
+    }
+
+    private static String uid(int index) {
+        return String.format("%08x-0000-4000-8000-%012x", index, (long) index * 2654435761L & 0xffffffffffffL);
+    }
+}
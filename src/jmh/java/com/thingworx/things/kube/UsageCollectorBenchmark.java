@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One collection of pod and node usage from the metrics.k8s.io API of the mock API server into the usage stores,
+ * and a range query of one day of a pod at each resolution, from a store holding a week of its samples.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UsageCollectorBenchmark {
+    private static final long DAY = 86400000L;
+
+    @Param({"1000", "10000"})
+    public int podCount;
+
+    private MockKubeApiServer _server;
+    private ApiClient _client;
+    private UsageCollector _collector;
+    private UsageStore _filled;
+    private String _key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        _server = new MockKubeApiServer(podCount, 0, 0, 0, 0L);
+        _server.start();
+        _client = KubeClientFactory.createClient(_server.getConnectionSettings(5), new ClientMetrics());
+        _collector = new UsageCollector(store("pods", podCount), store("nodes", 100), 60);
+        // a week of samples every 30 seconds for one pod
+        _filled = store("pods", 1);
+        _key = UsageCollector.key(SyntheticResources.NAMESPACE, "app-0-00000000");
+        long now = System.currentTimeMillis();
+        long collection = 0;
+        for (long time = now - 7 * DAY; time <= now; time += 30000L) {
+            _filled.add(_key, time, time % 1000 / 1000.0, time % 1000 * 1048576.0, ++collection);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        KubeClientFactory.closeClient(_client);
+        _server.close();
+    }
+
+    @Benchmark
+    public List<UsageStore.Sample> collect() throws Exception {
+        return _collector.collect(_client);
+    }
+
+    @Benchmark
+    public UsageStore.Range queryRaw() {
+        return queryDay(UsageStore.Resolution.RAW);
+    }
+
+    @Benchmark
+    public UsageStore.Range queryMinutes() {
+        return queryDay(UsageStore.Resolution.MINUTE);
+    }
+
+    @Benchmark
+    public UsageStore.Range queryQuarterHours() {
+        return queryDay(UsageStore.Resolution.QUARTER_HOUR);
+    }
+
+    private UsageStore.Range queryDay(UsageStore.Resolution resolution) {
+        long now = System.currentTimeMillis();
+        return _filled.query(_key, now - DAY, now, resolution);
+    }
+
+    private static UsageStore store(String name, int maxSeries) {
+        return new UsageStore(name, 30000L, 3600000L, 21600000L, 604800000L, maxSeries);
+    }
+}
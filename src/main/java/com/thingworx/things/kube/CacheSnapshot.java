@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The contents of the resource caches saved to a file, so that a restarted Thing can answer from memory right away
+ * and resume its watches instead of listing every object again.
+ * <p>
+ * The file is a gzip stream: a header with the API server the caches were filled from and the time they were saved,
+ * then, for every cache, its name, its resourceVersion and its objects as length-prefixed JSON documents. Objects keep
+ * the JSON form of the API so that the file does not depend on the client version. A file is replaced atomically, so
+ * a crash while saving leaves the previous snapshot in place.
+ */
+final class CacheSnapshot {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshot.class);
+    private static final int MAGIC = 0x4B534E50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final class Entry {
+        final String name;
+        final String resourceVersion;
+        final List<String> items;
+
+        Entry(String name, String resourceVersion, List<String> items) {
+            this.name = name;
+            this.resourceVersion = resourceVersion;
+            this.items = items;
+        }
+    }
+
+    final String server;
+    final long savedAt;
+    final Map<String, Entry> entries;
+
+    CacheSnapshot(String server, long savedAt, Map<String, Entry> entries) {
+        this.server = server;
+        this.savedAt = savedAt;
+        this.entries = entries;
+    }
+
+    void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(server);
+            out.writeLong(savedAt);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.name);
+                out.writeUTF(entry.resourceVersion);
+                out.writeInt(entry.items.size());
+                for (String item : entry.items) {
+                    byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot, or returns null when there is none, it cannot be read, or it was taken from another API
+     * server than the given one.
+     */
+    static CacheSnapshot read(File file, String server) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.warn("Ignoring cache snapshot " + file + " of an unknown format");
+                return null;
+            }
+            String snapshotServer = in.readUTF();
+            if (!snapshotServer.equals(server)) {
+                LOGGER.info("Ignoring cache snapshot " + file + " of " + snapshotServer + ", the Thing is connected to " + server);
+                return null;
+            }
+            long savedAt = in.readLong();
+            int count = in.readInt();
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String resourceVersion = in.readUTF();
+                int size = in.readInt();
+                List<String> items = new ArrayList<>(size);
+                byte[] buffer = new byte[8192];
+                for (int j = 0; j < size; j++) {
+                    int length = in.readInt();
+                    if (length > buffer.length) {
+                        buffer = new byte[Math.max(length, buffer.length * 2)];
+                    }
+                    in.readFully(buffer, 0, length);
+                    items.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+                }
+                entries.put(name, new Entry(name, resourceVersion, items));
+            }
+            return new CacheSnapshot(snapshotServer, savedAt, entries);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not read cache snapshot " + file + ", the caches will be listed again", ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.models.V1ObjectMeta;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * The most recent changes of a cluster-wide cache, in the order the informer applied them, which is the
+ * resourceVersion order of the watch.
+ * <p>
+ * Every change gets the next sequence number of the log, and a sync token is the epoch of the log and the sequence
+ * number of the last change the caller has seen. The log only keeps its latest changes: a token older than the oldest
+ * change kept, or from another log, for instance one of a Thing that was restarted or reconnected, cannot be answered
+ * and the caller has to take the full list again. Only the kind of change and the object key are kept; added and
+ * modified objects are read from the cache when the changes are asked for, so that the log does not hold on to old
+ * versions of the objects. Deleted objects are kept, as the cache no longer has them.
+ */
+final class ChangeLog<T> implements ResourceInformer.Listener<T> {
+    enum ChangeType {
+        ADDED, MODIFIED, DELETED
+    }
+
+    static final class Change<T> {
+        final ChangeType type;
+        final T object;
+
+        Change(ChangeType type, T object) {
+            this.type = type;
+            this.object = object;
+        }
+    }
+
+    /**
+     * The changes since a token, at most one per object, and the token to ask for the next ones.
+     */
+    static final class Changes<T> {
+        final List<Change<T>> changes;
+        final String token;
+
+        Changes(List<Change<T>> changes, String token) {
+            this.changes = changes;
+            this.token = token;
+        }
+    }
+
+    private static final class Entry<T> {
+        final long sequence;
+        final ChangeType type;
+        final String namespace;
+        final String name;
+        final T deleted;
+
+        Entry(long sequence, ChangeType type, String namespace, String name, T deleted) {
+            this.sequence = sequence;
+            this.type = type;
+            this.namespace = namespace;
+            this.name = name;
+            this.deleted = deleted;
+        }
+    }
+
+    private final ResourceInformer<T> _informer;
+    private final Function<T, V1ObjectMeta> _metadata;
+    private final String _epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final ArrayDeque<Entry<T>> _entries = new ArrayDeque<>();
+    private int _capacity;
+    private long _sequence;
+    private long _trimmed;
+
+    ChangeLog(ResourceInformer<T> informer, Function<T, V1ObjectMeta> metadata, int capacity) {
+        this._informer = informer;
+        this._metadata = metadata;
+        this._capacity = Math.max(1, capacity);
+    }
+
+    @Override
+    public synchronized void onChange(T oldObject, T newObject) {
+        ChangeType type = oldObject == null ? ChangeType.ADDED : newObject == null ? ChangeType.DELETED : ChangeType.MODIFIED;
+        V1ObjectMeta meta = _metadata.apply(newObject == null ? oldObject : newObject);
+        _entries.addLast(new Entry<>(++_sequence, type, namespaceOf(meta), meta.getName(), newObject == null ? oldObject : null));
+        trim();
+    }
+
+    synchronized void setCapacity(int capacity) {
+        _capacity = Math.max(1, capacity);
+        trim();
+    }
+
+    /**
+     * Returns the token of the current end of the log. Read it before the objects of a full list: changes applied in
+     * between are returned again with the next changes, which is harmless as they carry the current objects.
+     */
+    synchronized String token() {
+        return _epoch + ":" + _sequence;
+    }
+
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Returns the changes of the objects of a namespace, or of all namespaces when namespace is null, since the
+     * given token, or null when the token is not one of this log or older than the oldest change kept.
+     * Several changes of one object are folded into one: an object added and then deleted since the token is left
+     * out, as the caller never saw it, and an object deleted and then added again is modified.
+     */
+    Changes<T> since(String token, String namespace) {
+        long from = parse(token);
+        Map<String, Entry<T>> first = new LinkedHashMap<>();
+        Map<String, Entry<T>> last = new LinkedHashMap<>();
+        String next;
+        synchronized (this) {
+            if (from < _trimmed || from > _sequence) {
+                return null;
+            }
+            Iterator<Entry<T>> entries = _entries.descendingIterator();
+            List<Entry<T>> newer = new ArrayList<>();
+            while (entries.hasNext()) {
+                Entry<T> entry = entries.next();
+                if (entry.sequence <= from) {
+                    break;
+                }
+                newer.add(entry);
+            }
+            for (int i = newer.size() - 1; i >= 0; i--) {
+                Entry<T> entry = newer.get(i);
+                if (namespace == null || namespace.equals(entry.namespace)) {
+                    String key = entry.namespace + "/" + entry.name;
+                    first.putIfAbsent(key, entry);
+                    last.remove(key);
+                    last.put(key, entry);
+                }
+            }
+            next = _epoch + ":" + _sequence;
+        }
+
+        List<Change<T>> changes = new ArrayList<>(last.size());
+        for (Map.Entry<String, Entry<T>> item : last.entrySet()) {
+            Entry<T> latest = item.getValue();
+            ChangeType before = first.get(item.getKey()).type;
+            if (latest.type == ChangeType.DELETED) {
+                if (before != ChangeType.ADDED) {
+                    changes.add(new Change<>(ChangeType.DELETED, latest.deleted));
+                }
+                continue;
+            }
+            T current = _informer.get(latest.namespace, latest.name);
+            if (current == null) {
+                // deleted after the end of this batch, the next one returns the deletion
+                continue;
+            }
+            changes.add(new Change<>(before == ChangeType.ADDED ? ChangeType.ADDED : ChangeType.MODIFIED, current));
+        }
+        return new Changes<>(changes, next);
+    }
+
+    /**
+     * Returns the sequence number of a token of this log, or -1 when it is not one.
+     */
+    private long parse(String token) {
+        int separator = token == null ? -1 : token.lastIndexOf(':');
+        if (separator < 0 || !_epoch.equals(token.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(separator + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private void trim() {
+        while (_entries.size() > _capacity) {
+            _trimmed = _entries.removeFirst().sequence;
+        }
+    }
+
+    private static String namespaceOf(V1ObjectMeta meta) {
+        return meta.getNamespace() == null ? "" : meta.getNamespace();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.JSON;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the services of a KubeThing and of the HTTP requests they make.
+ * <p>
+ * A service call opens a {@link Scope} on its thread. The HTTP interceptors and the JSON decoder of the API client add
+ * their network, rate limit wait and decode time, bytes and objects to the scope of the calling thread; what remains
+ * of the service time is spent building the result. HTTP requests made outside any service, e.g. by informers, are
+ * counted under {@link #HTTP} only.
+ */
+final class ClientMetrics {
+    static final String HTTP = "http";
+    static final String TOTAL = "total";
+    static final String NETWORK = "network";
+    static final String DECODE = "decode";
+    static final String BUILD = "build";
+    static final String WAIT = "wait";
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    private static final Map<Class<?>, Method> ITEMS_GETTERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<long[]> READ_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Map<String, Stats> _stats = new ConcurrentHashMap<>();
+    private volatile boolean _enabled = true;
+
+    static final class Stats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder apiCalls = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder objects = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram network = new LatencyHistogram();
+        final LatencyHistogram decode = new LatencyHistogram();
+        final LatencyHistogram build = new LatencyHistogram();
+        final LatencyHistogram wait = new LatencyHistogram();
+
+        Map<String, LatencyHistogram> phases() {
+            Map<String, LatencyHistogram> phases = new LinkedHashMap<>();
+            phases.put(TOTAL, total);
+            phases.put(NETWORK, network);
+            phases.put(DECODE, decode);
+            phases.put(BUILD, build);
+            phases.put(WAIT, wait);
+            return phases;
+        }
+    }
+
+    /**
+     * The measurements of one service call. Scopes of the same call on several threads share their counters.
+     */
+    final class Scope implements AutoCloseable {
+        private final Stats _target;
+        private final long _start = System.nanoTime();
+        private final LongAdder _networkNanos = new LongAdder();
+        private final LongAdder _decodeNanos = new LongAdder();
+        private final LongAdder _waitNanos = new LongAdder();
+        private final Scope _previous;
+        private volatile boolean _failed;
+
+        private Scope(Stats target, Scope previous) {
+            this._target = target;
+            this._previous = previous;
+        }
+
+        void fail() {
+            _failed = true;
+        }
+
+        @Override
+        public void close() {
+            long total = System.nanoTime() - _start;
+            long network = _networkNanos.sum();
+            long decode = _decodeNanos.sum();
+            long wait = _waitNanos.sum();
+            _target.calls.increment();
+            if (_failed) {
+                _target.errors.increment();
+            }
+            _target.total.recordNanos(total);
+            _target.network.recordNanos(network);
+            _target.decode.recordNanos(decode);
+            _target.wait.recordNanos(wait);
+            _target.build.recordNanos(Math.max(0L, total - network - decode - wait));
+            if (_previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(_previous);
+            }
+        }
+    }
+
+    boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Turns recording on or off. While off, the interceptor and the decoder pass everything through untouched.
+     */
+    void setEnabled(boolean enabled) {
+        this._enabled = enabled;
+    }
+
+    Scope begin(String name) {
+        Scope scope = new Scope(stats(name), CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * Runs a task of the current service call on another thread, measured in the scope of that call.
+     */
+    Runnable propagate(Runnable task) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            return task;
+        }
+        return () -> {
+            Scope previous = CURRENT.get();
+            CURRENT.set(scope);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a snapshot of the stats by name, sorted by name.
+     */
+    Map<String, Stats> getStats() {
+        return new TreeMap<>(_stats);
+    }
+
+    void reset() {
+        _stats.clear();
+    }
+
+    /**
+     * Times every HTTP request. The body of a regular response is left streaming to the caller and metered as it is
+     * read: the request is recorded when the body reaches its end or is closed, with the time to the headers and the
+     * time spent reading as network time. Watch and follow streams are counted when their headers arrive.
+     */
+    Interceptor interceptor() {
+        return chain -> {
+            Request request = chain.request();
+            if (!_enabled) {
+                return chain.proceed(request);
+            }
+            Scope scope = CURRENT.get();
+            Stats http = stats(HTTP);
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException ex) {
+                http.errors.increment();
+                recordRequest(http, scope, System.nanoTime() - start, 0);
+                throw ex;
+            }
+            if (!response.isSuccessful()) {
+                http.errors.increment();
+            }
+            ResponseBody body = response.body();
+            if (isStreaming(request) || body == null) {
+                recordRequest(http, scope, System.nanoTime() - start, 0);
+                return response;
+            }
+            MeteredSource source = new MeteredSource(body.source(), http, scope, System.nanoTime() - start);
+            return response.newBuilder().body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source))).build();
+        };
+    }
+
+    /**
+     * Counts the bytes and the read time of a response body, and records its request once, at the end of the body or
+     * when it is closed, whichever comes first.
+     */
+    private final class MeteredSource extends ForwardingSource {
+        private final Stats _http;
+        private final Scope _scope;
+        private final AtomicBoolean _recorded = new AtomicBoolean();
+        private long _nanos;
+        private long _bytes;
+
+        MeteredSource(Source source, Stats http, Scope scope, long headersNanos) {
+            super(source);
+            this._http = http;
+            this._scope = scope;
+            this._nanos = headersNanos;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long start = System.nanoTime();
+            long read;
+            try {
+                read = super.read(sink, byteCount);
+            } catch (IOException ex) {
+                addReadNanos(System.nanoTime() - start);
+                if (!_recorded.get()) {
+                    _http.errors.increment();
+                }
+                record();
+                throw ex;
+            }
+            addReadNanos(System.nanoTime() - start);
+            if (read < 0) {
+                record();
+            } else {
+                _bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            record();
+            super.close();
+        }
+
+        private void addReadNanos(long nanos) {
+            _nanos += nanos;
+            READ_NANOS.get()[0] += nanos;
+        }
+
+        private void record() {
+            if (_recorded.compareAndSet(false, true)) {
+                recordRequest(_http, _scope, _nanos, _bytes);
+            }
+        }
+    }
+
+    /**
+     * Returns a JSON decoder that adds its time and the number of decoded objects to the current scope.
+     */
+    JSON json() {
+        return new MeteredJson();
+    }
+
+    /**
+     * Returns the metrics a client was created with by {@link KubeClientFactory}, or null for any other client.
+     */
+    static ClientMetrics of(ApiClient client) {
+        return client.getJSON() instanceof MeteredJson ? ((MeteredJson) client.getJSON()).metrics() : null;
+    }
+
+    private final class MeteredJson extends JSON {
+        @Override
+        public <T> T deserialize(String body, Type returnType) {
+            if (!_enabled) {
+                return super.deserialize(body, returnType);
+            }
+            long start = System.nanoTime();
+            T result = super.deserialize(body, returnType);
+            recordDecode(System.nanoTime() - start, countObjects(result));
+            return result;
+        }
+
+        ClientMetrics metrics() {
+            return ClientMetrics.this;
+        }
+    }
+
+    /**
+     * Returns the time the current thread has spent reading metered response bodies, to take out of a decode time
+     * measured around a streaming read: that time is already counted as network time.
+     */
+    static long readNanos() {
+        return READ_NANOS.get()[0];
+    }
+
+    /**
+     * Records the time spent decoding a response and the number of objects it held.
+     */
+    void recordDecode(long nanos, long objects) {
+        if (!_enabled) {
+            return;
+        }
+        Stats http = stats(HTTP);
+        http.decode.recordNanos(nanos);
+        http.objects.add(objects);
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope._decodeNanos.add(nanos);
+            scope._target.objects.add(objects);
+        }
+    }
+
+    /**
+     * Records the time a request waited for the client-side rate limit.
+     */
+    void recordWait(long nanos) {
+        if (!_enabled) {
+            return;
+        }
+        stats(HTTP).wait.recordNanos(nanos);
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope._waitNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Counts a request answered with the result of an identical request, without an API call of its own.
+     */
+    void recordCoalesced() {
+        if (!_enabled) {
+            return;
+        }
+        stats(HTTP).coalesced.increment();
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope._target.coalesced.increment();
+        }
+    }
+
+    private void recordRequest(Stats http, Scope scope, long elapsed, long bytes) {
+        http.calls.increment();
+        http.apiCalls.increment();
+        http.network.recordNanos(elapsed);
+        http.bytes.add(bytes);
+        if (scope != null) {
+            scope._networkNanos.add(elapsed);
+            scope._target.apiCalls.increment();
+            scope._target.bytes.add(bytes);
+        }
+    }
+
+    private Stats stats(String name) {
+        Stats stats = _stats.get(name);
+        return stats != null ? stats : _stats.computeIfAbsent(name, k -> new Stats());
+    }
+
+    private static boolean isStreaming(Request request) {
+        String query = request.httpUrl().query();
+        return query != null && (query.contains("watch=true") || query.contains("follow=true"));
+    }
+
+    /**
+     * A list counts its items, any other object counts as one.
+     */
+    private static long countObjects(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        Method getItems = ITEMS_GETTERS.computeIfAbsent(result.getClass(), ClientMetrics::findItemsGetter);
+        if (getItems.getDeclaringClass() == ClientMetrics.class) {
+            return 1;
+        }
+        try {
+            Object items = getItems.invoke(result);
+            return items instanceof List ? ((List<?>) items).size() : 1;
+        } catch (ReflectiveOperationException ex) {
+            return 1;
+        }
+    }
+
+    private static Method findItemsGetter(Class<?> type) {
+        try {
+            Method method = type.getMethod("getItems");
+            if (List.class.isAssignableFrom(method.getReturnType())) {
+                return method;
+            }
+        } catch (NoSuchMethodException ignored) {
+            // not a list
+        }
+        try {
+            // marker for types without items, ConcurrentHashMap does not hold nulls
+            return ClientMetrics.class.getDeclaredMethod("countObjects", Object.class);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.util.KubeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The clusters a KubeThing can fan out to, each with its own pooled client. A cluster is defined by a row of the
+ * Clusters table, either with a server and credentials, or with a kubeconfig file: one cluster for the given context,
+ * or one cluster per context of the file when no context is given.
+ * <p>
+ * Clients are kept across calls and rebuilt only for the clusters whose row, or kubeconfig file, changed. The client
+ * of a changed or removed cluster may still be in use by a fan-out call on another thread: it is closed once the
+ * timeout of that cluster has passed.
+ */
+final class ClusterRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterRegistry.class);
+
+    /**
+     * One row of the Clusters table.
+     */
+    static final class Definition {
+        final String name;
+        final KubeConnectionSettings settings;
+        final String kubeconfigFile;
+        final String context;
+
+        Definition(String name, KubeConnectionSettings settings, String kubeconfigFile, String context) {
+            this.name = name;
+            this.settings = settings;
+            this.kubeconfigFile = kubeconfigFile;
+            this.context = context;
+        }
+    }
+
+    static final class Cluster {
+        final String name;
+        final String server;
+        final String source;
+        final ApiClient client;
+        final RequestCoalescer coalescer;
+        final int timeout;
+        private final Object _key;
+        private volatile long _lastCall;
+        private volatile long _lastLatencyMillis = -1;
+        private volatile String _lastError;
+
+        private Cluster(String name, String server, String source, ApiClient client, RequestCoalescer coalescer, int timeout, Object key) {
+            this.name = name;
+            this.server = server;
+            this.source = source;
+            this.client = client;
+            this.coalescer = coalescer;
+            this.timeout = timeout;
+            this._key = key;
+        }
+
+        /**
+         * Records the outcome of a fan-out call, error null when it succeeded.
+         */
+        void recordCall(long start, String error) {
+            _lastCall = System.currentTimeMillis();
+            _lastLatencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            _lastError = error;
+        }
+
+        long getLastCall() {
+            return _lastCall;
+        }
+
+        long getLastLatencyMillis() {
+            return _lastLatencyMillis;
+        }
+
+        String getLastError() {
+            return _lastError;
+        }
+    }
+
+    /**
+     * The contexts of a kubeconfig file as of its modification time.
+     */
+    private static final class KubeconfigContexts {
+        final long modified;
+        final List<String> names;
+
+        KubeconfigContexts(long modified, List<String> names) {
+            this.modified = modified;
+            this.names = names;
+        }
+    }
+
+    private final ClientMetrics _metrics;
+    private final Supplier<ScheduledExecutorService> _scheduler;
+    private final Map<String, Cluster> _clusters = new LinkedHashMap<>();
+    // clients of replaced clusters not closed yet
+    private final List<ApiClient> _retiredClients = new ArrayList<>();
+    // by file, so that the kubeconfig of a row without context is parsed again only when it changes
+    private final Map<String, KubeconfigContexts> _kubeconfigContexts = new HashMap<>();
+
+    ClusterRegistry(ClientMetrics metrics, Supplier<ScheduledExecutorService> scheduler) {
+        this._metrics = metrics;
+        this._scheduler = scheduler;
+    }
+
+    /**
+     * Brings the clusters in line with the definitions: new and changed clusters get a new client, the clients of
+     * removed and changed clusters are retired.
+     */
+    synchronized void configure(List<Definition> definitions) throws Exception {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        Map<String, Definition> sources = new HashMap<>();
+        Set<String> files = new HashSet<>();
+        for (Definition definition : definitions) {
+            if (definition.kubeconfigFile != null) {
+                files.add(definition.kubeconfigFile);
+            }
+            for (String context : contexts(definition)) {
+                String name = context == null || (definition.context != null && !definition.name.isEmpty()) ? definition.name : context;
+                if (name.isEmpty()) {
+                    throw new Exception("A row of the Clusters table has no name");
+                }
+                if (keys.containsKey(name)) {
+                    throw new Exception("Cluster " + name + " is defined more than once");
+                }
+                keys.put(name, definition.kubeconfigFile == null ? definition.settings
+                        : Arrays.asList(definition.kubeconfigFile, new File(definition.kubeconfigFile).lastModified(), context, definition.settings));
+                sources.put(name, definition);
+            }
+        }
+        _kubeconfigContexts.keySet().retainAll(files);
+
+        for (Iterator<Cluster> it = _clusters.values().iterator(); it.hasNext(); ) {
+            Cluster cluster = it.next();
+            if (!cluster._key.equals(keys.get(cluster.name))) {
+                retire(cluster);
+                it.remove();
+            }
+        }
+        Map<String, Cluster> clusters = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : keys.entrySet()) {
+            Cluster cluster = _clusters.get(entry.getKey());
+            if (cluster == null) {
+                cluster = connect(entry.getKey(), sources.get(entry.getKey()), entry.getValue());
+                LOGGER.info("Connected cluster " + cluster.name + " to " + cluster.server);
+            }
+            clusters.put(cluster.name, cluster);
+        }
+        // keep the order of the table
+        _clusters.clear();
+        _clusters.putAll(clusters);
+    }
+
+    /**
+     * Returns the clusters named in a comma separated list, or all clusters when the list is empty.
+     */
+    synchronized List<Cluster> select(String names) throws Exception {
+        if (names == null || names.trim().isEmpty()) {
+            return new ArrayList<>(_clusters.values());
+        }
+        List<Cluster> clusters = new ArrayList<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Cluster cluster = _clusters.get(name);
+            if (cluster == null) {
+                throw new Exception("Cluster " + name + " is not defined in the Clusters table");
+            }
+            if (!clusters.contains(cluster)) {
+                clusters.add(cluster);
+            }
+        }
+        return clusters;
+    }
+
+    synchronized void close() {
+        for (ApiClient client : _retiredClients) {
+            KubeClientFactory.closeClient(client);
+        }
+        _retiredClients.clear();
+        for (Cluster cluster : _clusters.values()) {
+            KubeClientFactory.closeClient(cluster.client);
+        }
+        _clusters.clear();
+    }
+
+    /**
+     * Closes the client of a cluster after its timeout, from the scheduler, never in the call that replaced it.
+     */
+    private void retire(Cluster cluster) {
+        _retiredClients.add(cluster.client);
+        _scheduler.get().schedule(() -> {
+            synchronized (this) {
+                if (!_retiredClients.remove(cluster.client)) {
+                    return;
+                }
+            }
+            KubeClientFactory.closeClient(cluster.client);
+        }, cluster.timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private Cluster connect(String name, Definition definition, Object key) throws Exception {
+        KubeConnectionSettings settings = definition.settings;
+        RequestCoalescer coalescer = new RequestCoalescer(settings.getCoalesceTtl(), _metrics);
+        if (definition.kubeconfigFile == null) {
+            ApiClient client = KubeClientFactory.createClient(settings, _metrics);
+            return new Cluster(name, settings.getBasePath(), "table", client, coalescer, settings.getTimeout(), key);
+        }
+        String context = ((List<?>) key).get(2).toString();
+        KubeConfig kubeConfig = load(definition.kubeconfigFile);
+        if (!kubeConfig.setContext(context)) {
+            throw new Exception("Context " + context + " of cluster " + name + " is not defined in " + definition.kubeconfigFile);
+        }
+        ApiClient client = KubeClientFactory.createClient(kubeConfig, settings, _metrics);
+        return new Cluster(name, kubeConfig.getServer(), definition.kubeconfigFile + "#" + context, client, coalescer, settings.getTimeout(), key);
+    }
+
+    /**
+     * Returns the contexts a definition stands for: null for a server row, the given context, or all contexts of the
+     * kubeconfig file, which is parsed again only when its modification time changes.
+     */
+    private List<String> contexts(Definition definition) throws Exception {
+        if (definition.kubeconfigFile == null) {
+            return Collections.singletonList(null);
+        }
+        if (definition.context != null) {
+            return Collections.singletonList(definition.context);
+        }
+        long modified = new File(definition.kubeconfigFile).lastModified();
+        KubeconfigContexts known = _kubeconfigContexts.get(definition.kubeconfigFile);
+        if (known != null && known.modified == modified) {
+            return known.names;
+        }
+        List<String> contexts = new ArrayList<>();
+        for (Object context : load(definition.kubeconfigFile).getContexts()) {
+            if (context instanceof Map && ((Map<?, ?>) context).get("name") != null) {
+                contexts.add(((Map<?, ?>) context).get("name").toString());
+            }
+        }
+        if (contexts.isEmpty()) {
+            throw new Exception("Kubeconfig " + definition.kubeconfigFile + " defines no context");
+        }
+        _kubeconfigContexts.put(definition.kubeconfigFile, new KubeconfigContexts(modified, contexts));
+        return contexts;
+    }
+
+    private static KubeConfig load(String file) throws Exception {
+        try (Reader reader = Files.newBufferedReader(new File(file).toPath(), StandardCharsets.UTF_8)) {
+            return Objects.requireNonNull(KubeConfig.loadKubeConfig(reader));
+        } catch (IOException ex) {
+            throw new Exception("Could not read kubeconfig " + file + ": " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.models.V1Container;
+import io.kubernetes.client.models.V1ContainerStatus;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1Node;
+import io.kubernetes.client.models.V1NodeCondition;
+import io.kubernetes.client.models.V1Pod;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Aggregates of the pods, nodes and deployments of the cluster, kept up to date from the changes of the cluster-wide
+ * informers: a change takes back what the old object counted for and adds what the new one counts for, so that
+ * reading the summary costs the size of the result, not the size of the cluster.
+ * <p>
+ * Counts are integers, CPU in millicores and memory in bytes, so that adding and taking back never drifts. The
+ * requests of a node are those of the containers of its pods that are neither Succeeded nor Failed, as the
+ * scheduler counts them; init containers are left out.
+ */
+final class ClusterSummary {
+    static final String CLUSTER = "cluster";
+    static final String PHASE = "phase";
+    static final String NAMESPACE = "namespace";
+    static final String NODE = "node";
+    static final String RESTARTS = "restarts";
+    static final String DEPLOYMENT = "deployment";
+
+    static final class Row {
+        final String section;
+        final String name;
+        final String metric;
+        final double value;
+
+        Row(String section, String name, String metric, double value) {
+            this.section = section;
+            this.name = name;
+            this.metric = metric;
+            this.value = value;
+        }
+    }
+
+    private static final class NodeStats {
+        int pods;
+        long cpuRequested;
+        long memoryRequested;
+        long cpuAllocatable;
+        long memoryAllocatable;
+        boolean known;
+        boolean ready;
+    }
+
+    private static final class Restarts {
+        final String pod;
+        final int count;
+
+        Restarts(String pod, int count) {
+            this.pod = pod;
+            this.count = count;
+        }
+    }
+
+    private static final Comparator<Restarts> MOST_RESTARTS = Comparator.<Restarts>comparingInt(r -> -r.count).thenComparing(r -> r.pod);
+
+    final ResourceInformer.Listener<V1Pod> podListener = this::onPodChange;
+    final ResourceInformer.Listener<V1Node> nodeListener = this::onNodeChange;
+    final ResourceInformer.Listener<V1Deployment> deploymentListener = this::onDeploymentChange;
+
+    private final Map<String, Integer> _phases = new TreeMap<>();
+    private final Map<String, Map<String, Integer>> _namespaces = new TreeMap<>();
+    private final Map<String, NodeStats> _nodes = new TreeMap<>();
+    private final TreeSet<Restarts> _restarts = new TreeSet<>(MOST_RESTARTS);
+    private final Map<String, int[]> _unavailable = new TreeMap<>();
+    private int _pods;
+    private int _nodeCount;
+    private int _readyNodes;
+    private int _deployments;
+    private long _cpuRequested;
+    private long _memoryRequested;
+    private long _cpuAllocatable;
+    private long _memoryAllocatable;
+
+    /**
+     * Returns the rows of the given sections, or of all of them when sections is null, with at most topRestarts pods
+     * in the restarts section. Values are counts, cores and bytes.
+     */
+    synchronized List<Row> rows(Set<String> sections, int topRestarts, boolean synced) {
+        List<Row> rows = new ArrayList<>();
+        if (sections == null || sections.contains(CLUSTER)) {
+            rows.add(new Row(CLUSTER, "", "synced", synced ? 1 : 0));
+            rows.add(new Row(CLUSTER, "", "pods", _pods));
+            rows.add(new Row(CLUSTER, "", "nodes", _nodeCount));
+            rows.add(new Row(CLUSTER, "", "readyNodes", _readyNodes));
+            rows.add(new Row(CLUSTER, "", "deployments", _deployments));
+            rows.add(new Row(CLUSTER, "", "unavailableDeployments", _unavailable.size()));
+            rows.add(new Row(CLUSTER, "", "cpuRequested", _cpuRequested / 1000.0));
+            rows.add(new Row(CLUSTER, "", "cpuAllocatable", _cpuAllocatable / 1000.0));
+            rows.add(new Row(CLUSTER, "", "memoryRequested", _memoryRequested));
+            rows.add(new Row(CLUSTER, "", "memoryAllocatable", _memoryAllocatable));
+        }
+        if (sections == null || sections.contains(PHASE)) {
+            for (Map.Entry<String, Integer> phase : _phases.entrySet()) {
+                rows.add(new Row(PHASE, phase.getKey(), "pods", phase.getValue()));
+            }
+        }
+        if (sections == null || sections.contains(NAMESPACE)) {
+            for (Map.Entry<String, Map<String, Integer>> namespace : _namespaces.entrySet()) {
+                for (Map.Entry<String, Integer> phase : namespace.getValue().entrySet()) {
+                    rows.add(new Row(NAMESPACE, namespace.getKey(), phase.getKey(), phase.getValue()));
+                }
+            }
+        }
+        if (sections == null || sections.contains(NODE)) {
+            for (Map.Entry<String, NodeStats> node : _nodes.entrySet()) {
+                NodeStats stats = node.getValue();
+                rows.add(new Row(NODE, node.getKey(), "ready", stats.ready ? 1 : 0));
+                rows.add(new Row(NODE, node.getKey(), "pods", stats.pods));
+                rows.add(new Row(NODE, node.getKey(), "cpuRequested", stats.cpuRequested / 1000.0));
+                rows.add(new Row(NODE, node.getKey(), "cpuAllocatable", stats.cpuAllocatable / 1000.0));
+                rows.add(new Row(NODE, node.getKey(), "memoryRequested", stats.memoryRequested));
+                rows.add(new Row(NODE, node.getKey(), "memoryAllocatable", stats.memoryAllocatable));
+            }
+        }
+        if (sections == null || sections.contains(RESTARTS)) {
+            Iterator<Restarts> restarts = _restarts.iterator();
+            for (int i = 0; i < topRestarts && restarts.hasNext(); i++) {
+                Restarts pod = restarts.next();
+                rows.add(new Row(RESTARTS, pod.pod, "restarts", pod.count));
+            }
+        }
+        if (sections == null || sections.contains(DEPLOYMENT)) {
+            for (Map.Entry<String, int[]> deployment : _unavailable.entrySet()) {
+                rows.add(new Row(DEPLOYMENT, deployment.getKey(), "readyReplicas", deployment.getValue()[0]));
+                rows.add(new Row(DEPLOYMENT, deployment.getKey(), "desiredReplicas", deployment.getValue()[1]));
+            }
+        }
+        return rows;
+    }
+
+    private synchronized void onPodChange(V1Pod oldPod, V1Pod newPod) {
+        if (oldPod != null) {
+            count(oldPod, -1);
+        }
+        if (newPod != null) {
+            count(newPod, 1);
+        }
+    }
+
+    private synchronized void onNodeChange(V1Node oldNode, V1Node newNode) {
+        if (oldNode != null) {
+            count(oldNode, -1);
+        }
+        if (newNode != null) {
+            count(newNode, 1);
+        }
+    }
+
+    private synchronized void onDeploymentChange(V1Deployment oldDeployment, V1Deployment newDeployment) {
+        if (oldDeployment != null) {
+            count(oldDeployment, -1);
+        }
+        if (newDeployment != null) {
+            count(newDeployment, 1);
+        }
+    }
+
+    private void count(V1Pod pod, int sign) {
+        String phase = pod.getStatus() == null || pod.getStatus().getPhase() == null ? "Unknown" : pod.getStatus().getPhase();
+        String namespace = pod.getMetadata().getNamespace();
+        _pods += sign;
+        add(_phases, phase, sign);
+        Map<String, Integer> phases = _namespaces.computeIfAbsent(namespace, k -> new TreeMap<>());
+        add(phases, phase, sign);
+        if (phases.isEmpty()) {
+            _namespaces.remove(namespace);
+        }
+
+        String nodeName = pod.getSpec() == null ? null : pod.getSpec().getNodeName();
+        if (nodeName != null) {
+            NodeStats node = _nodes.computeIfAbsent(nodeName, k -> new NodeStats());
+            node.pods += sign;
+            if (!"Succeeded".equals(phase) && !"Failed".equals(phase)) {
+                long cpu = 0;
+                long memory = 0;
+                for (V1Container container : pod.getSpec().getContainers() == null ? Collections.<V1Container>emptyList() : pod.getSpec().getContainers()) {
+                    Map<String, Quantity> requests = container.getResources() == null ? null : container.getResources().getRequests();
+                    cpu += millis(requests, "cpu");
+                    memory += units(requests, "memory");
+                }
+                node.cpuRequested += sign * cpu;
+                node.memoryRequested += sign * memory;
+                _cpuRequested += sign * cpu;
+                _memoryRequested += sign * memory;
+            }
+            removeIfUnused(nodeName, node);
+        }
+
+        int restarts = 0;
+        if (pod.getStatus() != null && pod.getStatus().getContainerStatuses() != null) {
+            for (V1ContainerStatus status : pod.getStatus().getContainerStatuses()) {
+                restarts += status.getRestartCount() == null ? 0 : status.getRestartCount();
+            }
+        }
+        if (restarts > 0) {
+            Restarts entry = new Restarts(namespace + "/" + pod.getMetadata().getName(), restarts);
+            if (sign > 0) {
+                _restarts.add(entry);
+            } else {
+                _restarts.remove(entry);
+            }
+        }
+    }
+
+    private void count(V1Node node, int sign) {
+        String name = node.getMetadata().getName();
+        NodeStats stats = _nodes.computeIfAbsent(name, k -> new NodeStats());
+        Map<String, Quantity> allocatable = node.getStatus() == null ? null : node.getStatus().getAllocatable();
+        long cpu = millis(allocatable, "cpu");
+        long memory = units(allocatable, "memory");
+        boolean ready = false;
+        if (node.getStatus() != null && node.getStatus().getConditions() != null) {
+            for (V1NodeCondition condition : node.getStatus().getConditions()) {
+                ready |= "Ready".equals(condition.getType()) && "True".equals(condition.getStatus());
+            }
+        }
+        stats.known = sign > 0;
+        stats.ready = sign > 0 && ready;
+        stats.cpuAllocatable = sign > 0 ? cpu : 0;
+        stats.memoryAllocatable = sign > 0 ? memory : 0;
+        _nodeCount += sign;
+        _readyNodes += ready ? sign : 0;
+        _cpuAllocatable += sign * cpu;
+        _memoryAllocatable += sign * memory;
+        removeIfUnused(name, stats);
+    }
+
+    private void count(V1Deployment deployment, int sign) {
+        _deployments += sign;
+        if (StateChangeWatch.isAvailable(deployment)) {
+            return;
+        }
+        String key = deployment.getMetadata().getNamespace() + "/" + deployment.getMetadata().getName();
+        if (sign > 0) {
+            _unavailable.put(key, new int[]{StateChangeWatch.readyReplicas(deployment), StateChangeWatch.desiredReplicas(deployment)});
+        } else {
+            _unavailable.remove(key);
+        }
+    }
+
+    /**
+     * Forgets a node that is not in the node cache and has no pods left, such as one deleted after its pods.
+     */
+    private void removeIfUnused(String name, NodeStats stats) {
+        if (!stats.known && stats.pods == 0) {
+            _nodes.remove(name);
+        }
+    }
+
+    private static void add(Map<String, Integer> counts, String key, int sign) {
+        int count = counts.getOrDefault(key, 0) + sign;
+        if (count == 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count);
+        }
+    }
+
+    private static long millis(Map<String, Quantity> quantities, String resource) {
+        Quantity quantity = quantities == null ? null : quantities.get(resource);
+        return quantity == null ? 0 : quantity.getNumber().movePointRight(3).setScale(0, RoundingMode.CEILING).longValue();
+    }
+
+    private static long units(Map<String, Quantity> quantities, String resource) {
+        Quantity quantity = quantities == null ? null : quantities.get(resource);
+        return quantity == null ? 0 : quantity.getNumber().setScale(0, RoundingMode.CEILING).longValue();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.JsonSyntaxException;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.AppsV1Api;
+import io.kubernetes.client.models.V1DeleteOptions;
+import io.kubernetes.client.models.V1Scale;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deployment operations that address a single deployment by name through the apps/v1 API.
+ */
+final class DeploymentOperations {
+    static final long DELETE_GRACE_PERIOD = 30L;
+
+    private DeploymentOperations() {
+    }
+
+    /**
+     * Sets the replica count with a JSON patch on the scale subresource, so the call neither reads the deployment
+     * first nor conflicts with concurrent changes to the rest of its spec.
+     */
+    static V1Scale scale(ApiClient client, String namespace, String deploymentName, int replicas) throws ApiException {
+        Map<String, Object> operation = new HashMap<>();
+        operation.put("op", "add");
+        operation.put("path", "/spec/replicas");
+        operation.put("value", replicas);
+        List<Map<String, Object>> patch = Collections.singletonList(operation);
+        return new AppsV1Api(client).patchNamespacedDeploymentScale(deploymentName, namespace, patch, null, null);
+    }
+
+    static void delete(ApiClient client, String namespace, String deploymentName) throws ApiException {
+        V1DeleteOptions deleteOptions = new V1DeleteOptions();
+        deleteOptions.setGracePeriodSeconds(DELETE_GRACE_PERIOD);
+        deleteOptions.setPropagationPolicy("Background");
+        try {
+            new AppsV1Api(client).deleteNamespacedDeployment(deploymentName, namespace, deleteOptions, null, null, null, null, null);
+        } catch (JsonSyntaxException ex) {
+            // the API server answers a successful delete with the deleted object instead of the V1Status the client expects
+        }
+    }
+
+    static int parseReplicas(Object value) throws Exception {
+        int replicas;
+        try {
+            replicas = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(String.valueOf(value).trim());
+        } catch (NumberFormatException ex) {
+            throw new Exception("Invalid number of replicas [" + value + "]");
+        }
+        if (replicas < 0) {
+            throw new Exception("Number of replicas cannot be negative [" + value + "]");
+        }
+        return replicas;
+    }
+
+    /**
+     * Turns an API error into a message a ThingWorx user can act on.
+     */
+    static String describe(ApiException ex, String target) {
+        if (ex.getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+            return target + " was not found";
+        }
+        if (ex.getCode() == 0) {
+            return "Could not reach the Kubernetes API server for " + target + ": " + ex.getMessage();
+        }
+        String body = ex.getResponseBody();
+        return "Kubernetes API request for " + target + " failed with HTTP " + ex.getCode()
+                + (body == null || body.isEmpty() ? "" : ": " + body);
+    }
+}
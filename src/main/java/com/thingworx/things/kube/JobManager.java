@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the asynchronous services of a KubeThing: every job gets an id as soon as it is queued, runs on a bounded pool
+ * of threads, and its outcome is kept for the retention time so that it can be looked up by id.
+ * <p>
+ * The number of queued jobs is bounded too. A job submitted while the queue is full is refused right away, so a slow
+ * API server makes callers retry instead of piling up work and memory.
+ */
+final class JobManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobManager.class);
+
+    enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    interface Task {
+        /**
+         * Does the work of the job and returns the message describing its outcome.
+         */
+        String run() throws Exception;
+    }
+
+    interface Listener {
+        void completed(Job job);
+    }
+
+    static final class Job {
+        final String id;
+        final String type;
+        final String target;
+        final long submitted = System.currentTimeMillis();
+        private volatile State _state = State.QUEUED;
+        private volatile long _started;
+        private volatile long _finished;
+        private volatile String _message = "";
+
+        private Job(String type, String target) {
+            this.id = UUID.randomUUID().toString();
+            this.type = type;
+            this.target = target;
+        }
+
+        State getState() {
+            return _state;
+        }
+
+        boolean isDone() {
+            return _state == State.SUCCEEDED || _state == State.FAILED;
+        }
+
+        long getStarted() {
+            return _started;
+        }
+
+        long getFinished() {
+            return _finished;
+        }
+
+        String getMessage() {
+            return _message;
+        }
+
+        /**
+         * Returns the time the job ran, or has been running, in milliseconds.
+         */
+        long getDurationMillis() {
+            if (_started == 0) {
+                return 0;
+            }
+            return (_finished == 0 ? System.currentTimeMillis() : _finished) - _started;
+        }
+    }
+
+    private final ThreadPoolExecutor _executor;
+    private final Listener _listener;
+    private final Map<String, Job> _jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger _queued = new AtomicInteger();
+    private volatile int _queueSize;
+    private volatile long _retentionMillis;
+
+    JobManager(String threadPrefix, int concurrency, int queueSize, long retentionMillis, Listener listener) {
+        this._listener = listener;
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.max(1, concurrency);
+        this._executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, threadPrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this._executor.allowCoreThreadTimeOut(true);
+        this._queueSize = Math.max(0, queueSize);
+        this._retentionMillis = Math.max(0L, retentionMillis);
+    }
+
+    /**
+     * Applies new limits. Jobs already queued beyond a smaller queue size still run.
+     */
+    void setLimits(int concurrency, int queueSize, long retentionMillis) {
+        int threads = Math.max(1, concurrency);
+        if (threads > _executor.getMaximumPoolSize()) {
+            _executor.setMaximumPoolSize(threads);
+            _executor.setCorePoolSize(threads);
+        } else if (threads < _executor.getMaximumPoolSize()) {
+            _executor.setCorePoolSize(threads);
+            _executor.setMaximumPoolSize(threads);
+        }
+        this._queueSize = Math.max(0, queueSize);
+        this._retentionMillis = Math.max(0L, retentionMillis);
+    }
+
+    /**
+     * Queues a job and returns it. Throws when the queue is full or the manager is shut down.
+     */
+    Job submit(String type, String target, Task task) throws Exception {
+        purgeExpired();
+        if (_queued.incrementAndGet() > _queueSize + idleThreads()) {
+            _queued.decrementAndGet();
+            throw new Exception("Too many jobs waiting (" + _queueSize + "), " + type + " of " + target + " was not queued; retry later");
+        }
+        Job job = new Job(type, target);
+        _jobs.put(job.id, job);
+        try {
+            _executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException ex) {
+            _queued.decrementAndGet();
+            _jobs.remove(job.id);
+            throw new Exception("Jobs are not accepted, the Thing is shutting down");
+        }
+        return job;
+    }
+
+    Job get(String id) {
+        return id == null ? null : _jobs.get(id);
+    }
+
+    /**
+     * Returns the known jobs, most recently submitted first.
+     */
+    List<Job> list() {
+        purgeExpired();
+        List<Job> jobs = new ArrayList<>(_jobs.values());
+        jobs.sort(Comparator.comparingLong((Job job) -> job.submitted).reversed());
+        return jobs;
+    }
+
+    int getQueued() {
+        return _queued.get();
+    }
+
+    int getRunning() {
+        return _executor.getActiveCount();
+    }
+
+    /**
+     * Stops the threads. Running jobs are interrupted; queued jobs are dropped without a completion.
+     */
+    void shutdown() {
+        _executor.shutdownNow();
+    }
+
+    private void run(Job job, Task task) {
+        _queued.decrementAndGet();
+        job._started = System.currentTimeMillis();
+        job._state = State.RUNNING;
+        State state;
+        String message;
+        try {
+            message = task.run();
+            state = State.SUCCEEDED;
+        } catch (Exception ex) {
+            message = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+            state = State.FAILED;
+        }
+        job._message = message == null ? "" : message;
+        job._finished = System.currentTimeMillis();
+        job._state = state;
+        try {
+            _listener.completed(job);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not report the completion of job " + job.id, ex);
+        }
+    }
+
+    /**
+     * Threads that can take a job right away; jobs up to this number do not count against the queue size.
+     */
+    private int idleThreads() {
+        return Math.max(0, _executor.getMaximumPoolSize() - _executor.getActiveCount());
+    }
+
+    private void purgeExpired() {
+        long oldest = System.currentTimeMillis() - _retentionMillis;
+        for (Iterator<Job> it = _jobs.values().iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            if (job.isDone() && job._finished < oldest) {
+                it.remove();
+            }
+        }
+    }
+}
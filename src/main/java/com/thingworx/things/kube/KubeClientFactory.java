@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.util.ClientBuilder;
+import io.kubernetes.client.util.KubeConfig;
+import io.kubernetes.client.util.credentials.UsernamePasswordAuthentication;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the long-lived API clients used by a KubeThing.
+ * Every client gets its own connection pool and dispatcher so Things never share sockets or the JVM-global default client.
+ */
+final class KubeClientFactory {
+
+    private KubeClientFactory() {
+    }
+
+    /**
+     * Builds a client whose requests and decoding are recorded in the given metrics. Requests pass a per-client rate
+     * limiter when the settings set a qps.
+     */
+    static ApiClient createClient(KubeConnectionSettings settings, ClientMetrics metrics) {
+        ApiClient client = new ApiClient();
+        client.setBasePath(settings.getBasePath());
+        configure(client, settings, metrics);
+
+        if (settings.hasCredentials()) {
+            new UsernamePasswordAuthentication(settings.getUsername(), settings.getPassword()).provide(client);
+        }
+        return client;
+    }
+
+    /**
+     * Builds a client for the current context of a kubeconfig: server, certificates and credentials come from the
+     * kubeconfig, pooling, timeouts and rate limit from the settings.
+     */
+    static ApiClient createClient(KubeConfig kubeConfig, KubeConnectionSettings settings, ClientMetrics metrics) throws IOException {
+        ApiClient client = ClientBuilder.kubeconfig(kubeConfig).build();
+        configure(client, settings, metrics);
+        return client;
+    }
+
+    private static void configure(ApiClient client, KubeConnectionSettings settings, ClientMetrics metrics) {
+        client.setJSON(metrics.json());
+
+        OkHttpClient httpClient = client.getHttpClient();
+        httpClient.setConnectionPool(new ConnectionPool(settings.getConnectionPoolSize(), settings.getKeepAliveDuration(), TimeUnit.MILLISECONDS));
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+        httpClient.setDispatcher(dispatcher);
+        httpClient.setConnectTimeout(settings.getTimeout(), TimeUnit.MILLISECONDS);
+        httpClient.setReadTimeout(settings.getTimeout(), TimeUnit.MILLISECONDS);
+        httpClient.setWriteTimeout(settings.getTimeout(), TimeUnit.MILLISECONDS);
+        if (settings.isRateLimited()) {
+            // ahead of the metrics, so that time spent waiting for a token is not counted as network time
+            httpClient.interceptors().add(new RequestRateLimiter(settings.getQps(), settings.getBurst(), settings.getTimeout(), metrics));
+        }
+        httpClient.interceptors().add(metrics.interceptor());
+    }
+
+    /**
+     * Builds a client for long-lived watch and follow streams. It shares the connection pool and dispatcher of the
+     * given client, its interceptors and rate limiter included, but uses a read timeout long enough to outlive a
+     * server-side watch timeout.
+     */
+    static ApiClient createStreamingClient(ApiClient client, KubeConnectionSettings settings, long readTimeout) {
+        ApiClient streamingClient = new ApiClient();
+        streamingClient.setBasePath(client.getBasePath());
+        OkHttpClient httpClient = client.getHttpClient().clone();
+        httpClient.setReadTimeout(readTimeout, TimeUnit.MILLISECONDS);
+        streamingClient.setHttpClient(httpClient);
+        if (settings.hasCredentials()) {
+            new UsernamePasswordAuthentication(settings.getUsername(), settings.getPassword()).provide(streamingClient);
+        }
+        return streamingClient;
+    }
+
+    /**
+     * Releases the sockets and dispatcher threads held by a client built by this factory.
+     */
+    static void closeClient(ApiClient client) {
+        if (client == null) {
+            return;
+        }
+        OkHttpClient httpClient = client.getHttpClient();
+        httpClient.getDispatcher().getExecutorService().shutdown();
+        httpClient.getConnectionPool().evictAll();
+    }
+}
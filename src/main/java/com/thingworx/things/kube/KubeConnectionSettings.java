@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of the ConnectionInfo configuration table.
+ * Two snapshots are equal when a client built from one can be reused for the other.
+ */
+final class KubeConnectionSettings {
+    static final String DEFAULT_SERVER_NAME = "http://127.0.0.1";
+    static final int DEFAULT_SERVER_PORT = 8001;
+    static final int DEFAULT_TIMEOUT = 60000;
+    static final int DEFAULT_CONNECTION_POOL_SIZE = 5;
+    static final long DEFAULT_KEEP_ALIVE_DURATION = 300000L;
+    static final int DEFAULT_MAX_REQUESTS_PER_HOST = 10;
+    static final int DEFAULT_QPS = 50;
+    static final int DEFAULT_BURST = 100;
+
+    private final String _serverName;
+    private final int _serverPort;
+    private final boolean _useSSL;
+    private final String _username;
+    private final String _password;
+    private final int _timeout;
+    private final int _connectionPoolSize;
+    private final long _keepAliveDuration;
+    private final int _maxRequestsPerHost;
+    private final int _qps;
+    private final int _burst;
+    private final long _coalesceTtl;
+
+    KubeConnectionSettings(String serverName, int serverPort, boolean useSSL, String username, String password,
+                           int timeout, int connectionPoolSize, long keepAliveDuration, int maxRequestsPerHost,
+                           int qps, int burst, long coalesceTtl) {
+        this._serverName = serverName == null || serverName.isEmpty() ? DEFAULT_SERVER_NAME : serverName;
+        this._serverPort = serverPort > 0 ? serverPort : DEFAULT_SERVER_PORT;
+        this._useSSL = useSSL;
+        this._username = username == null ? "" : username;
+        this._password = password == null ? "" : password;
+        this._timeout = timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+        this._connectionPoolSize = connectionPoolSize > 0 ? connectionPoolSize : DEFAULT_CONNECTION_POOL_SIZE;
+        this._keepAliveDuration = keepAliveDuration > 0 ? keepAliveDuration : DEFAULT_KEEP_ALIVE_DURATION;
+        this._maxRequestsPerHost = maxRequestsPerHost > 0 ? maxRequestsPerHost : DEFAULT_MAX_REQUESTS_PER_HOST;
+        // 0 turns the rate limiter off
+        this._qps = Math.max(0, qps);
+        this._burst = burst > 0 ? burst : Math.max(1, _qps);
+        this._coalesceTtl = Math.max(0L, coalesceTtl);
+    }
+
+    /**
+     * Builds the API base path. A scheme typed into serverName is replaced by the one selected with useSSL.
+     */
+    String getBasePath() {
+        String host = _serverName.trim();
+        int schemeEnd = host.indexOf("://");
+        if (schemeEnd >= 0) {
+            host = host.substring(schemeEnd + 3);
+        }
+        while (host.endsWith("/")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        return (_useSSL ? "https://" : "http://") + host + ":" + _serverPort;
+    }
+
+    boolean hasCredentials() {
+        return !_username.isEmpty() && !_password.isEmpty();
+    }
+
+    String getUsername() {
+        return _username;
+    }
+
+    String getPassword() {
+        return _password;
+    }
+
+    int getTimeout() {
+        return _timeout;
+    }
+
+    int getConnectionPoolSize() {
+        return _connectionPoolSize;
+    }
+
+    long getKeepAliveDuration() {
+        return _keepAliveDuration;
+    }
+
+    int getMaxRequestsPerHost() {
+        return _maxRequestsPerHost;
+    }
+
+    boolean isRateLimited() {
+        return _qps > 0;
+    }
+
+    int getQps() {
+        return _qps;
+    }
+
+    int getBurst() {
+        return _burst;
+    }
+
+    long getCoalesceTtl() {
+        return _coalesceTtl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KubeConnectionSettings)) {
+            return false;
+        }
+        KubeConnectionSettings that = (KubeConnectionSettings) o;
+        return _serverPort == that._serverPort
+                && _useSSL == that._useSSL
+                && _timeout == that._timeout
+                && _connectionPoolSize == that._connectionPoolSize
+                && _keepAliveDuration == that._keepAliveDuration
+                && _maxRequestsPerHost == that._maxRequestsPerHost
+                && _qps == that._qps
+                && _burst == that._burst
+                && _coalesceTtl == that._coalesceTtl
+                && _serverName.equals(that._serverName)
+                && _username.equals(that._username)
+                && _password.equals(that._password);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(_serverName, _serverPort, _useSSL, _username, _password, _timeout,
+                _connectionPoolSize, _keepAliveDuration, _maxRequestsPerHost, _qps, _burst, _coalesceTtl);
+    }
+
+    @Override
+    public String toString() {
+        return getBasePath() + " (pool=" + _connectionPoolSize + ", keepAlive=" + _keepAliveDuration
+                + "ms, maxRequestsPerHost=" + _maxRequestsPerHost + ", timeout=" + _timeout + "ms, qps=" + _qps
+                + ", burst=" + _burst + ", coalesceTtl=" + _coalesceTtl + "ms)";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the manner of HdrHistogram: every power of two of
+ * microseconds is split into 16 linear sub-buckets, which bounds the error of a percentile to about 6%.
+ * Recording is one bucket computation and three atomic additions.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^40 microseconds is about 12 days
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray _counts = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+
+    void recordNanos(long nanos) {
+        long micros = Math.max(0L, nanos / 1000L);
+        _counts.incrementAndGet(bucketOf(micros));
+        _count.increment();
+        _sum.add(micros);
+        long max = _max.get();
+        while (micros > max && !_max.compareAndSet(max, micros)) {
+            max = _max.get();
+        }
+    }
+
+    long getCount() {
+        return _count.sum();
+    }
+
+    double getMeanMillis() {
+        long count = _count.sum();
+        return count == 0 ? 0.0 : _sum.sum() / 1000.0 / count;
+    }
+
+    double getMaxMillis() {
+        return _max.get() / 1000.0;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile (0-100) of the recorded values.
+     */
+    double getPercentileMillis(double percentile) {
+        long total = 0;
+        long[] counts = new long[_counts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), _max.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return (MAX_EXPONENT + 1) * SUB_BUCKETS - 1;
+        }
+        int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.Call;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.Pair;
+
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Applies Kubernetes objects of any kind with create-or-patch semantics: the object is created, and merge-patched
+ * when it already exists.
+ * <p>
+ * The REST path of each kind is found through the discovery endpoint of its apiVersion, which is read once per
+ * apiVersion. Namespaces and CustomResourceDefinitions are applied first, as the other objects may depend on them;
+ * all other objects are independent and applied in parallel.
+ */
+class ManifestApplier {
+    static final String CREATED = "created";
+    static final String PATCHED = "patched";
+    static final String FAILED = "failed";
+
+    private static final List<String> FIRST_KINDS = Arrays.asList("Namespace", "CustomResourceDefinition");
+    private static final String[] AUTH_NAMES = {"BearerToken"};
+    private static final Type MAP_TYPE = new TypeToken<Map<String, Object>>() {
+    }.getType();
+
+    /**
+     * One object to apply, with the index of the parameter row it was rendered from.
+     */
+    static final class Item {
+        final int row;
+        final Map<String, Object> object;
+
+        Item(int row, Map<String, Object> object) {
+            this.row = row;
+            this.object = object;
+        }
+    }
+
+    static final class Result {
+        int row;
+        String apiVersion;
+        String kind;
+        String namespace;
+        String name;
+        String action = FAILED;
+        boolean success;
+        String message;
+        double latencyMs;
+
+        Result copyForRow(int row) {
+            Result copy = new Result();
+            copy.row = row;
+            copy.apiVersion = apiVersion;
+            copy.kind = kind;
+            copy.namespace = namespace;
+            copy.name = name;
+            copy.action = action;
+            copy.success = success;
+            copy.message = message;
+            copy.latencyMs = latencyMs;
+            return copy;
+        }
+    }
+
+    private static final class ApiResource {
+        final String name;
+        final boolean namespaced;
+
+        ApiResource(String name, boolean namespaced) {
+            this.name = name;
+            this.namespaced = namespaced;
+        }
+    }
+
+    private final ApiClient _client;
+    private final Map<String, Map<String, ApiResource>> _resources = new ConcurrentHashMap<>();
+
+    ManifestApplier(ApiClient client) {
+        this._client = client;
+    }
+
+    /**
+     * Applies the objects and returns one result per object, in the order given.
+     */
+    List<Result> apply(List<Item> items, String defaultNamespace, ExecutorService executor) throws Exception {
+        Result[] results = new Result[items.size()];
+        List<Integer> first = new ArrayList<>();
+        List<Integer> rest = new ArrayList<>();
+        // objects that render the same for every row, such as a shared Namespace, are sent once
+        Map<Map<String, Object>, Integer> distinct = new HashMap<>();
+        int[] sameAs = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            Integer previous = distinct.putIfAbsent(items.get(i).object, i);
+            sameAs[i] = previous == null ? i : previous;
+            if (previous == null) {
+                (FIRST_KINDS.contains(items.get(i).object.get("kind")) ? first : rest).add(i);
+            }
+        }
+        applyAll(items, first, defaultNamespace, executor, results);
+        applyAll(items, rest, defaultNamespace, executor, results);
+        for (int i = 0; i < items.size(); i++) {
+            if (sameAs[i] != i) {
+                results[i] = results[sameAs[i]].copyForRow(items.get(i).row);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private void applyAll(List<Item> items, List<Integer> indexes, String defaultNamespace, ExecutorService executor,
+                          Result[] results) throws Exception {
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (Integer index : indexes) {
+            Item item = items.get(index);
+            tasks.add(() -> apply(item, defaultNamespace));
+        }
+        List<Future<Result>> futures = executor.invokeAll(tasks);
+        for (int i = 0; i < indexes.size(); i++) {
+            results[indexes.get(i)] = futures.get(i).get();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Result apply(Item item, String defaultNamespace) {
+        long start = System.nanoTime();
+        Result result = new Result();
+        result.row = item.row;
+        Map<String, Object> object = item.object;
+        Map<String, Object> metadata = (Map<String, Object>) object.get("metadata");
+        result.apiVersion = stringValue(object.get("apiVersion"));
+        result.kind = stringValue(object.get("kind"));
+        result.name = stringValue(metadata.get("name"));
+        try {
+            if (result.apiVersion.isEmpty() || result.kind.isEmpty() || result.name.isEmpty()) {
+                throw new Exception("Manifest object needs an apiVersion, a kind and a metadata.name");
+            }
+            ApiResource resource = resolve(result.apiVersion, result.kind);
+            String collectionPath = apiPrefix(result.apiVersion);
+            if (resource.namespaced) {
+                String namespace = stringValue(metadata.get("namespace"));
+                result.namespace = namespace.isEmpty() ? defaultNamespace : namespace;
+                metadata.put("namespace", result.namespace);
+                collectionPath += "/namespaces/" + _client.escapeString(result.namespace);
+            }
+            collectionPath += "/" + resource.name;
+
+            try {
+                request("POST", collectionPath, object, "application/json");
+                result.action = CREATED;
+            } catch (ApiException ex) {
+                if (ex.getCode() != HttpURLConnection.HTTP_CONFLICT) {
+                    throw ex;
+                }
+                request("PATCH", collectionPath + "/" + _client.escapeString(result.name), object, "application/merge-patch+json");
+                result.action = PATCHED;
+            }
+            result.success = true;
+            result.message = result.kind + " " + result.name + " " + result.action;
+        } catch (ApiException ex) {
+            result.message = DeploymentOperations.describe(ex, result.kind + " " + result.name);
+        } catch (Exception ex) {
+            result.message = ex.getMessage();
+        }
+        result.latencyMs = (System.nanoTime() - start) / 1e6;
+        return result;
+    }
+
+    /**
+     * Finds the resource of a kind. Discovery is read again once on a miss, for kinds whose CRD was just created.
+     */
+    private ApiResource resolve(String apiVersion, String kind) throws Exception {
+        Map<String, ApiResource> resources = _resources.get(apiVersion);
+        if (resources == null || !resources.containsKey(kind)) {
+            // objects applied in parallel wait for a single discovery request
+            synchronized (_resources) {
+                Map<String, ApiResource> current = _resources.get(apiVersion);
+                if (current != resources && current != null && current.containsKey(kind)) {
+                    resources = current;
+                } else {
+                    resources = discover(apiVersion);
+                    _resources.put(apiVersion, resources);
+                }
+            }
+        }
+        ApiResource resource = resources.get(kind);
+        if (resource == null) {
+            throw new Exception("The API server does not serve kind " + kind + " in " + apiVersion);
+        }
+        return resource;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ApiResource> discover(String apiVersion) throws ApiException {
+        Map<String, ApiResource> resources = new HashMap<>();
+        Map<String, Object> resourceList;
+        try {
+            resourceList = request("GET", apiPrefix(apiVersion), null, "application/json");
+        } catch (ApiException ex) {
+            if (ex.getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                return resources;
+            }
+            throw ex;
+        }
+        Object items = resourceList == null ? null : resourceList.get("resources");
+        if (items instanceof List) {
+            for (Object item : (List<Object>) items) {
+                Map<String, Object> resource = (Map<String, Object>) item;
+                String name = stringValue(resource.get("name"));
+                // skip subresources such as deployments/scale
+                if (!name.isEmpty() && name.indexOf('/') < 0) {
+                    resources.put(stringValue(resource.get("kind")), new ApiResource(name, Boolean.TRUE.equals(resource.get("namespaced"))));
+                }
+            }
+        }
+        return resources;
+    }
+
+    private Map<String, Object> request(String method, String path, Object body, String contentType) throws ApiException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Content-Type", contentType);
+        Call call = _client.buildCall(path, method, new ArrayList<Pair>(), new ArrayList<Pair>(), body, headers,
+                new HashMap<String, Object>(), AUTH_NAMES, null);
+        return _client.<Map<String, Object>>execute(call, MAP_TYPE).getData();
+    }
+
+    private static String apiPrefix(String apiVersion) {
+        return apiVersion.indexOf('/') < 0 ? "/api/" + apiVersion : "/apis/" + apiVersion;
+    }
+
+    private static String stringValue(Object value) {
+        return value == null ? "" : value.toString();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed manifest files keyed by path. A file is read and parsed again only when its modification time or size changed.
+ */
+final class ManifestCache {
+    static final int MAX_ENTRIES = 256;
+
+    private final Map<String, Entry> _entries = new ConcurrentHashMap<>();
+
+    ManifestTemplate get(String filePath) throws Exception {
+        File file = new File(filePath);
+        if (!file.isFile()) {
+            _entries.remove(filePath);
+            throw new Exception("Manifest file [" + filePath + "] does not exist");
+        }
+        long modified = file.lastModified();
+        long length = file.length();
+        Entry entry = _entries.get(filePath);
+        if (entry != null && entry.modified == modified && entry.length == length) {
+            return entry.template;
+        }
+
+        ManifestTemplate template = ManifestTemplate.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        if (_entries.size() >= MAX_ENTRIES) {
+            _entries.clear();
+        }
+        _entries.put(filePath, new Entry(template, modified, length));
+        return template;
+    }
+
+    private static final class Entry {
+        final ManifestTemplate template;
+        final long modified;
+        final long length;
+
+        Entry(ManifestTemplate template, long modified, long length) {
+            this.template = template;
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed multi-document YAML manifest, with {@code ${name}} placeholders resolved at render time.
+ * <p>
+ * The YAML is parsed once into plain maps and lists. Rendering copies only the parts of the tree that contain a
+ * placeholder. A scalar that is exactly one placeholder takes the type of the parameter value, so that
+ * {@code replicas: ${replicas}} renders as a number; placeholders inside a longer string are replaced as text.
+ */
+final class ManifestTemplate {
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z0-9_.\\-]+)}");
+
+    private final List<Object> _documents;
+
+    private ManifestTemplate(List<Object> documents) {
+        this._documents = documents;
+    }
+
+    static ManifestTemplate parse(String yaml) throws Exception {
+        List<Object> documents = new ArrayList<>();
+        for (Object document : new Yaml(new SafeConstructor()).loadAll(yaml)) {
+            if (document == null) {
+                // empty documents, e.g. a trailing ---
+                continue;
+            }
+            if (!(document instanceof Map)) {
+                throw new Exception("Manifest document " + (documents.size() + 1) + " is not a Kubernetes object");
+            }
+            documents.add(document);
+        }
+        return new ManifestTemplate(Collections.unmodifiableList(documents));
+    }
+
+    int size() {
+        return _documents.size();
+    }
+
+    /**
+     * Returns the documents with every placeholder replaced. Fails on a placeholder without a parameter.
+     */
+    List<Map<String, Object>> render(Map<String, Object> parameters) throws Exception {
+        List<Map<String, Object>> rendered = new ArrayList<>(_documents.size());
+        for (Object document : _documents) {
+            rendered.add(copyObject(render(document, parameters)));
+        }
+        return rendered;
+    }
+
+    private static Object render(Object node, Map<String, Object> parameters) throws Exception {
+        if (node instanceof String) {
+            return renderScalar((String) node, parameters);
+        }
+        if (node instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) node;
+            Map<Object, Object> copy = null;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object value = render(entry.getValue(), parameters);
+                if (value != entry.getValue() && copy == null) {
+                    copy = new LinkedHashMap<>(map);
+                }
+                if (copy != null) {
+                    copy.put(entry.getKey(), value);
+                }
+            }
+            return copy == null ? node : copy;
+        }
+        if (node instanceof List) {
+            List<?> list = (List<?>) node;
+            List<Object> copy = null;
+            for (int i = 0; i < list.size(); i++) {
+                Object value = render(list.get(i), parameters);
+                if (value != list.get(i) && copy == null) {
+                    copy = new ArrayList<>(list);
+                }
+                if (copy != null) {
+                    copy.set(i, value);
+                }
+            }
+            return copy == null ? node : copy;
+        }
+        return node;
+    }
+
+    private static Object renderScalar(String value, Map<String, Object> parameters) throws Exception {
+        if (value.indexOf("${") < 0) {
+            return value;
+        }
+        Matcher matcher = PLACEHOLDER.matcher(value);
+        if (matcher.matches()) {
+            return parameter(matcher.group(1), parameters);
+        }
+        StringBuffer text = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(text, Matcher.quoteReplacement(String.valueOf(parameter(matcher.group(1), parameters))));
+        }
+        matcher.appendTail(text);
+        return text.toString();
+    }
+
+    private static Object parameter(String name, Map<String, Object> parameters) throws Exception {
+        Object value = parameters.get(name);
+        if (value == null) {
+            throw new Exception("Manifest parameter [" + name + "] has no value");
+        }
+        return value;
+    }
+
+    /**
+     * Copies the object and its metadata so the caller can set the name and namespace; the rest of the tree is shared
+     * with the template and must not be modified.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copyObject(Object document) {
+        Map<String, Object> copy = new LinkedHashMap<>((Map<String, Object>) document);
+        Object metadata = copy.get("metadata");
+        copy.put("metadata", metadata instanceof Map ? new LinkedHashMap<>((Map<String, Object>) metadata) : new LinkedHashMap<String, Object>());
+        return copy;
+    }
+}
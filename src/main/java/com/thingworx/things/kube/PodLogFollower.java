@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.Call;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.models.V1Pod;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Follows the log of one pod container over a long-lived connection.
+ * <p>
+ * Lines are read from the socket as they arrive and kept in a fixed-size ring buffer. Lines not yet delivered are
+ * collected for the next {@link #drain()}; when delivery falls behind by more than the buffer size, the oldest pending
+ * lines are dropped and counted. When the connection ends, the follower reconnects from the timestamp of the last line,
+ * waiting longer after each connection that brought no new line. It stops when the pod is deleted, Succeeded or
+ * Failed, and keeps the reason as its last error.
+ */
+class PodLogFollower {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PodLogFollower.class);
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = ISODateTimeFormat.dateTimeParser().withOffsetParsed();
+    private static final long MIN_BACKOFF = 1000L;
+    private static final long MAX_BACKOFF = 30000L;
+
+    static final class LogLine {
+        final DateTime timestamp;
+        final String text;
+
+        LogLine(DateTime timestamp, String text) {
+            this.timestamp = timestamp;
+            this.text = text;
+        }
+    }
+
+    private final String _namespace;
+    private final String _podName;
+    private final String _container;
+    private final String _streamName;
+    private final int _tailLines;
+    private final Supplier<ApiClient> _client;
+
+    private final LogLine[] _ring;
+    private int _ringStart;
+    private int _ringCount;
+    private final ArrayDeque<LogLine> _pending = new ArrayDeque<>();
+    private long _droppedLines;
+    private long _totalLines;
+
+    private volatile boolean _running;
+    private volatile Call _call;
+    private volatile String _lastError;
+    private DateTime _lastTimestamp;
+    private Thread _thread;
+
+    PodLogFollower(String namespace, String podName, String container, String streamName, int tailLines, int bufferLines,
+                   Supplier<ApiClient> client) {
+        this._namespace = namespace;
+        this._podName = podName;
+        this._container = container;
+        this._streamName = streamName;
+        this._tailLines = tailLines;
+        this._ring = new LogLine[Math.max(1, bufferLines)];
+        this._client = client;
+    }
+
+    static String key(String namespace, String podName, String container) {
+        return namespace + "/" + podName + (container == null || container.isEmpty() ? "" : "/" + container);
+    }
+
+    synchronized void start() {
+        if (_running) {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(this::run, "KubePodLog-" + key(_namespace, _podName, _container));
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    synchronized void stop() {
+        _running = false;
+        Call call = _call;
+        if (call != null) {
+            call.cancel();
+        }
+        if (_thread != null) {
+            _thread.interrupt();
+            _thread = null;
+        }
+    }
+
+    boolean isRunning() {
+        return _running;
+    }
+
+    String getNamespace() {
+        return _namespace;
+    }
+
+    String getPodName() {
+        return _podName;
+    }
+
+    String getContainer() {
+        return _container;
+    }
+
+    /**
+     * Name of the Stream entity the lines are written to, or null when they are delivered as events.
+     */
+    String getStreamName() {
+        return _streamName;
+    }
+
+    String getLastError() {
+        return _lastError;
+    }
+
+    synchronized long getTotalLines() {
+        return _totalLines;
+    }
+
+    /**
+     * Returns the lines received since the last call, oldest first.
+     */
+    synchronized List<LogLine> drain() {
+        if (_pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<LogLine> lines = new ArrayList<>(_pending);
+        _pending.clear();
+        return lines;
+    }
+
+    /**
+     * Returns the number of lines dropped since the last call because they were not drained in time.
+     */
+    synchronized long drainDroppedLines() {
+        long dropped = _droppedLines;
+        _droppedLines = 0;
+        return dropped;
+    }
+
+    /**
+     * Returns up to maxLines of the most recent lines in the ring buffer, oldest first.
+     */
+    synchronized List<LogLine> recent(int maxLines) {
+        int count = maxLines <= 0 ? _ringCount : Math.min(maxLines, _ringCount);
+        List<LogLine> lines = new ArrayList<>(count);
+        for (int i = _ringCount - count; i < _ringCount; i++) {
+            lines.add(_ring[(_ringStart + i) % _ring.length]);
+        }
+        return lines;
+    }
+
+    private synchronized void add(LogLine line) {
+        if (_ringCount < _ring.length) {
+            _ring[(_ringStart + _ringCount) % _ring.length] = line;
+            _ringCount++;
+        } else {
+            _ring[_ringStart] = line;
+            _ringStart = (_ringStart + 1) % _ring.length;
+        }
+        if (_pending.size() >= _ring.length) {
+            _pending.removeFirst();
+            _droppedLines++;
+        }
+        _pending.add(line);
+        _totalLines++;
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF;
+        long idleBackoff = MIN_BACKOFF;
+        while (_running) {
+            try {
+                long linesBefore = getTotalLines();
+                boolean ended = follow();
+                backoff = MIN_BACKOFF;
+                if (getTotalLines() > linesBefore) {
+                    idleBackoff = MIN_BACKOFF;
+                }
+                if (ended && _running) {
+                    // the server closed the stream: stop once the pod is done, otherwise the container may restart
+                    String phase = readPodPhase();
+                    if ("Succeeded".equals(phase) || "Failed".equals(phase)) {
+                        _lastError = "Pod " + _namespace + "/" + _podName + " is " + phase;
+                        LOGGER.info("Stopped following logs of " + key(_namespace, _podName, _container) + ": " + _lastError);
+                        _running = false;
+                        return;
+                    }
+                    // a stopped container ends every stream at once: back off while nothing new comes
+                    Thread.sleep(idleBackoff);
+                    idleBackoff = Math.min(idleBackoff * 2, MAX_BACKOFF);
+                }
+            } catch (ApiException ex) {
+                if (ex.getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    _lastError = "Pod " + _namespace + "/" + _podName + " was not found";
+                    LOGGER.info("Stopped following logs of " + key(_namespace, _podName, _container) + ": " + _lastError);
+                    _running = false;
+                    return;
+                }
+                backoff = onFailure(ex, backoff);
+            } catch (Exception ex) {
+                backoff = onFailure(ex, backoff);
+            }
+        }
+    }
+
+    private String readPodPhase() throws ApiException {
+        V1Pod pod = new CoreV1Api(_client.get()).readNamespacedPodStatus(_podName, _namespace, null);
+        return pod.getStatus() == null ? null : pod.getStatus().getPhase();
+    }
+
+    private long onFailure(Exception ex, long backoff) {
+        if (!_running) {
+            return backoff;
+        }
+        _lastError = ex.getMessage();
+        LOGGER.warn("Following logs of " + key(_namespace, _podName, _container) + " failed, retrying in " + backoff + "ms", ex);
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF);
+    }
+
+    /**
+     * Reads the log until the connection ends. Returns true when the server ended the stream, false when it timed out
+     * or the follower was stopped.
+     */
+    private boolean follow() throws Exception {
+        DateTime resumeAfter = _lastTimestamp;
+        Integer tailLines = resumeAfter == null ? _tailLines : null;
+        // the API only takes whole seconds: ask for one second more and skip the lines already seen
+        Integer sinceSeconds = resumeAfter == null ? null
+                : (int) Math.max(1, (System.currentTimeMillis() - resumeAfter.getMillis()) / 1000 + 1);
+        Call call = PodLogs.openCall(_client.get(), _namespace, _podName, _container, true, tailLines, sinceSeconds, null, true);
+        _call = call;
+        try (BufferedReader reader = PodLogs.execute(call)) {
+            _lastError = null;
+            String line;
+            while (_running && (line = reader.readLine()) != null) {
+                LogLine logLine = parse(line);
+                if (resumeAfter != null && !logLine.timestamp.isAfter(resumeAfter)) {
+                    continue;
+                }
+                _lastTimestamp = logLine.timestamp;
+                add(logLine);
+            }
+            return _running;
+        } catch (SocketTimeoutException ex) {
+            // a quiet container: reconnect and keep following
+            return false;
+        } catch (RuntimeException ex) {
+            if (_running) {
+                throw ex;
+            }
+            return false;
+        } finally {
+            _call = null;
+        }
+    }
+
+    /**
+     * Splits the RFC3339 timestamp the API server prefixes each line with when timestamps are requested.
+     */
+    private static LogLine parse(String line) {
+        int space = line.indexOf(' ');
+        if (space > 0) {
+            try {
+                return new LogLine(TIMESTAMP_FORMAT.parseDateTime(line.substring(0, space)), line.substring(space + 1));
+            } catch (IllegalArgumentException ex) {
+                // not a timestamp, keep the whole line
+            }
+        }
+        return new LogLine(DateTime.now(), line);
+    }
+}
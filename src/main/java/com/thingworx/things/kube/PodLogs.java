@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.CoreV1Api;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads pod logs from the response stream line by line, so that a log is never held twice in memory and reading
+ * stops as soon as the byte limit is reached, whatever the API server sends.
+ */
+final class PodLogs {
+    static final int DEFAULT_LIMIT_BYTES = 1024 * 1024;
+
+    private PodLogs() {
+    }
+
+    /**
+     * Returns at most limitBytes of the log of a pod container. tailLines and sinceSeconds are applied by the API server.
+     */
+    static String read(ApiClient client, String namespace, String podName, String container, Integer tailLines,
+                       Integer sinceSeconds, int limitBytes, boolean timestamps) throws ApiException, IOException {
+        Call call = openCall(client, namespace, podName, container, false, tailLines, sinceSeconds, limitBytes, timestamps);
+        StringBuilder log = new StringBuilder();
+        try (BufferedReader reader = execute(call)) {
+            int remaining = limitBytes;
+            String line;
+            while (remaining > 0 && (line = reader.readLine()) != null) {
+                byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > remaining) {
+                    // keep whole lines only
+                    break;
+                }
+                log.append(line).append('\n');
+                remaining -= bytes.length;
+            }
+        }
+        return log.toString();
+    }
+
+    static Call openCall(ApiClient client, String namespace, String podName, String container, boolean follow,
+                         Integer tailLines, Integer sinceSeconds, Integer limitBytes, boolean timestamps) throws ApiException {
+        return new CoreV1Api(client).readNamespacedPodLogCall(podName, namespace, emptyToNull(container), follow, limitBytes,
+                null, Boolean.FALSE, sinceSeconds, tailLines, timestamps, null, null);
+    }
+
+    /**
+     * Executes a log call and returns a reader on its body, or throws the API error of an unsuccessful response.
+     */
+    static BufferedReader execute(Call call) throws ApiException, IOException {
+        Response response = call.execute();
+        ResponseBody body = response.body();
+        if (!response.isSuccessful()) {
+            String message = body == null ? null : body.string();
+            throw new ApiException(response.code(), response.message(), response.headers().toMultimap(), message);
+        }
+        return new BufferedReader(new InputStreamReader(body.byteStream(), StandardCharsets.UTF_8));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
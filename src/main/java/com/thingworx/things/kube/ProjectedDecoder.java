@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.thingworx.types.collections.ValueCollection;
+import com.thingworx.types.primitives.IPrimitiveType;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.JSON;
+import io.kubernetes.client.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Decodes list responses into the values of a set of {@link ResourcePath}s only, instead of into model objects.
+ * <p>
+ * The response is read token by token. The paths form a tree of JSON property names; everything outside that tree,
+ * such as container specs, environment variables, volumes and managed fields, is skipped without being built. The
+ * value at the end of a path is decoded with the type adapter of the client for the declared model type, so the
+ * values, and the rows built from them, are the same as with the full model.
+ * <p>
+ * When every path lies under metadata, the API server is asked for a PartialObjectMetadataList, which only carries
+ * the metadata of each object; a server that does not know that representation answers with the plain list.
+ */
+final class ProjectedDecoder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProjectedDecoder.class);
+    private static final Gson GSON = new JSON().getGson();
+    private static final String[] AUTH_NAMES = {"BearerToken"};
+    private static final String JSON_ACCEPT = "application/json";
+    private static final String METADATA_ACCEPT = "application/json;as=PartialObjectMetadataList;v=v1beta1;g=meta.k8s.io, application/json";
+    private static final int MAX_LOGGED_DIFFERENCES = 5;
+
+    /**
+     * How list services decode the responses of the API server: into the full model, into the DataShape fields only,
+     * or both, logging where the rows differ and returning those of the model.
+     */
+    enum Mode {
+        MODEL, PROJECTED, COMPARE;
+
+        static Mode parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return PROJECTED;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                LOGGER.warn("Unknown list decoding " + value + ", using projected");
+                return PROJECTED;
+            }
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final int depth;
+        TypeAdapter<?> adapter;
+        int[] columns = new int[0];
+        int[] nested = new int[0];
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private final List<ResourcePath> _paths;
+    private final Node _root = new Node(0);
+    private final boolean _metadataOnly;
+
+    ProjectedDecoder(List<ResourcePath> paths) {
+        this._paths = paths;
+        boolean metadataOnly = !paths.isEmpty();
+        for (int column = 0; column < paths.size(); column++) {
+            ResourcePath path = paths.get(column);
+            List<String> names = path.getJsonNames();
+            metadataOnly &= "metadata".equals(names.get(0));
+            Node node = _root;
+            for (String name : names) {
+                Node parent = node;
+                node = parent.children.computeIfAbsent(name, k -> new Node(parent.depth + 1));
+            }
+            node.columns = append(node.columns, column);
+            node.adapter = GSON.getAdapter(TypeToken.get(path.getValueType()));
+        }
+        this._metadataOnly = metadataOnly;
+        collectNested(_root, null);
+    }
+
+    /**
+     * Lists one page of a core v1 resource, pods or services, in a namespace or in all namespaces when namespace is
+     * null. Every item of the page holds the values of the paths, in the order of the paths.
+     */
+    ResourceInformer.ListPage<Object[]> list(ApiClient client, String resource, String namespace, String fieldSelector,
+                                             String labelSelector, String continueToken, int limit, int timeoutSeconds) throws ApiException {
+        String path = namespace == null ? "/api/v1/" + resource : "/api/v1/namespaces/" + client.escapeString(namespace) + "/" + resource;
+        List<Pair> query = new ArrayList<>();
+        query.addAll(client.parameterToPair("continue", continueToken));
+        query.addAll(client.parameterToPair("fieldSelector", fieldSelector));
+        query.addAll(client.parameterToPair("labelSelector", labelSelector));
+        query.addAll(client.parameterToPair("limit", limit));
+        query.addAll(client.parameterToPair("timeoutSeconds", timeoutSeconds));
+        query.addAll(client.parameterToPair("watch", Boolean.FALSE));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", _metadataOnly ? METADATA_ACCEPT : JSON_ACCEPT);
+        Request request = client.buildRequest(path, "GET", query, new ArrayList<>(), null, headers, new HashMap<>(), AUTH_NAMES, null);
+
+        Response response;
+        try {
+            response = client.getHttpClient().newCall(request).execute();
+        } catch (IOException ex) {
+            throw new ApiException(ex);
+        }
+        try (ResponseBody body = response.body()) {
+            if (!response.isSuccessful()) {
+                throw new ApiException(response.message(), response.code(), response.headers().toMultimap(), body.string());
+            }
+            long start = System.nanoTime();
+            long readStart = ClientMetrics.readNanos();
+            ResourceInformer.ListPage<Object[]> page = read(body.charStream());
+            ClientMetrics metrics = ClientMetrics.of(client);
+            if (metrics != null) {
+                // the body is read while decoding, its transfer is network time
+                metrics.recordDecode(System.nanoTime() - start - (ClientMetrics.readNanos() - readStart), page.items.size());
+            }
+            return page;
+        } catch (IOException | RuntimeException ex) {
+            throw new ApiException("Could not decode the " + resource + " list: " + ex.getMessage(), ex, response.code(), response.headers().toMultimap());
+        }
+    }
+
+    /**
+     * Reads a list document: its resourceVersion, its continue token, and the values of the paths for every item.
+     */
+    ResourceInformer.ListPage<Object[]> read(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        List<Object[]> items = new ArrayList<>();
+        String resourceVersion = null;
+        String continueToken = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("metadata".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if ("resourceVersion".equals(field) && reader.peek() == JsonToken.STRING) {
+                        resourceVersion = reader.nextString();
+                    } else if ("continue".equals(field) && reader.peek() == JsonToken.STRING) {
+                        continueToken = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("items".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Object[] values = new Object[_paths.size()];
+                    read(reader, _root, values);
+                    items.add(values);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ResourceInformer.ListPage<>(items, resourceVersion, continueToken);
+    }
+
+    boolean isMetadataOnly() {
+        return _metadataOnly;
+    }
+
+    private void read(JsonReader reader, Node node, Object[] values) throws IOException {
+        if (node.adapter != null) {
+            Object value = node.adapter.read(reader);
+            for (int column : node.columns) {
+                values[column] = value;
+            }
+            // paths that go on below the end of another path read from its decoded value
+            for (int column : node.nested) {
+                values[column] = _paths.get(column).read(value, node.depth);
+            }
+            return;
+        }
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Node child = node.children.get(reader.nextName());
+                if (child == null) {
+                    reader.skipValue();
+                } else {
+                    read(reader, child, values);
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext(); index++) {
+                Node child = node.children.get("[" + index + "]");
+                if (child == null) {
+                    reader.skipValue();
+                } else {
+                    read(reader, child, values);
+                }
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    /**
+     * Logs the differences between the rows of the projected and of the model decoding of the same page.
+     * Returns the number of rows that differ.
+     */
+    static int compare(String resource, String namespace, List<ValueCollection> projected, List<ValueCollection> model) {
+        String target = resource + (namespace == null ? "" : " of namespace " + namespace);
+        if (projected.size() != model.size()) {
+            LOGGER.warn("Projected decoding of " + target + " returned " + projected.size() + " rows, the model " + model.size());
+        }
+        int differences = 0;
+        for (int i = 0; i < Math.min(projected.size(), model.size()); i++) {
+            TreeSet<String> names = new TreeSet<>(projected.get(i).keySet());
+            names.addAll(model.get(i).keySet());
+            for (String name : names) {
+                String projectedValue = text(projected.get(i).get(name));
+                String modelValue = text(model.get(i).get(name));
+                if (!Objects.equals(projectedValue, modelValue)) {
+                    if (differences < MAX_LOGGED_DIFFERENCES) {
+                        LOGGER.warn("Projected decoding of " + target + " differs in row " + i + ", field " + name
+                                + ": projected [" + projectedValue + "], model [" + modelValue + "]");
+                    }
+                    differences++;
+                    break;
+                }
+            }
+        }
+        if (differences > 0 || projected.size() != model.size()) {
+            LOGGER.warn("Projected decoding of " + target + " differs from the model in " + differences + " of " + model.size() + " rows");
+        } else {
+            LOGGER.debug("Projected decoding of " + target + " matches the model in " + model.size() + " rows");
+        }
+        return differences;
+    }
+
+    private static String text(IPrimitiveType<?, ?> value) {
+        return value == null || value.getValue() == null ? null : value.getValue().toString();
+    }
+
+    /**
+     * Fills the nested columns of every node that ends a path: the columns of the paths that continue below it.
+     */
+    private static void collectNested(Node node, Node end) {
+        if (end != null) {
+            for (int column : node.columns) {
+                end.nested = append(end.nested, column);
+            }
+        }
+        Node next = end != null ? end : (node.adapter != null ? node : null);
+        for (Node child : node.children.values()) {
+            collectNested(child, next);
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = value;
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-flight execution of read requests: while a request is in flight, identical requests wait for it and share
+ * its decoded result instead of calling the API server again. With a TTL, a successful result also answers identical
+ * requests for that long after it arrived; failures are shared with the waiting requests only.
+ * <p>
+ * Results are shared between callers and must not be modified.
+ */
+final class RequestCoalescer {
+    private static final int PURGE_THRESHOLD = 256;
+
+    interface Request<T> {
+        T execute() throws ApiException;
+    }
+
+    private static final class Flight {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        volatile long completedAt;
+    }
+
+    private final long _ttlNanos;
+    private final ClientMetrics _metrics;
+    private final Map<String, Flight> _flights = new ConcurrentHashMap<>();
+
+    RequestCoalescer(long ttlMillis, ClientMetrics metrics) {
+        this._ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ttlMillis));
+        this._metrics = metrics;
+    }
+
+    /**
+     * Executes a request, or joins the identical request in flight or cached under the same key. The key must hold
+     * everything the result depends on: resource, namespace, selectors, page and limit.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, Request<T> request) throws ApiException {
+        Flight flight = new Flight();
+        while (true) {
+            Flight existing = _flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.result.isDone() || System.nanoTime() - existing.completedAt < _ttlNanos) {
+                _metrics.recordCoalesced();
+                return (T) await(existing);
+            }
+            _flights.remove(key, existing);
+        }
+
+        if (_flights.size() > PURGE_THRESHOLD) {
+            purgeExpired();
+        }
+        try {
+            T value = request.execute();
+            flight.completedAt = System.nanoTime();
+            flight.result.complete(value);
+            if (_ttlNanos == 0) {
+                _flights.remove(key, flight);
+            }
+            return value;
+        } catch (ApiException | RuntimeException | Error ex) {
+            _flights.remove(key, flight);
+            flight.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private static Object await(Flight flight) throws ApiException {
+        try {
+            return flight.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ApiException) {
+                throw (ApiException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new ApiException(ex.getCause());
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        for (Iterator<Flight> it = _flights.values().iterator(); it.hasNext(); ) {
+            Flight flight = it.next();
+            if (flight.result.isDone() && now - flight.completedAt >= _ttlNanos) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Builds a request key from its parts, null parts included.
+     */
+    static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            key.append(part == null ? "" : part.toString()).append('\0');
+        }
+        return key.toString();
+    }
+}
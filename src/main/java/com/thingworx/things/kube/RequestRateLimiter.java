@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket in front of every request of a client: requests pass at qps per second on average, with bursts of up
+ * to burst requests. A request that finds the bucket empty reserves the next token and sleeps until it is due, so
+ * waiting requests are served in arrival order without holding a lock. A request that would have to wait longer than
+ * the request timeout fails instead of queueing.
+ */
+final class RequestRateLimiter implements Interceptor {
+    private final double _nanosPerToken;
+    private final double _burst;
+    private final long _maxWaitNanos;
+    private final ClientMetrics _metrics;
+
+    private double _tokens;
+    private long _refilledAt = System.nanoTime();
+
+    RequestRateLimiter(int qps, int burst, long maxWaitMillis, ClientMetrics metrics) {
+        this._nanosPerToken = TimeUnit.SECONDS.toNanos(1) / (double) qps;
+        this._burst = Math.max(1, burst);
+        this._maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this._metrics = metrics;
+        this._tokens = _burst;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        long wait = reserve();
+        if (wait < 0) {
+            throw new IOException("Client-side rate limit exceeded: " + chain.request().method() + " " + chain.request().httpUrl().encodedPath()
+                    + " would wait more than " + TimeUnit.NANOSECONDS.toMillis(_maxWaitNanos) + "ms");
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the client-side rate limit");
+            }
+        }
+        _metrics.recordWait(wait);
+        return chain.proceed(chain.request());
+    }
+
+    /**
+     * Takes a token and returns the nanoseconds to wait for it, or -1 when the wait would exceed the maximum; the
+     * token is then not taken.
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        _tokens = Math.min(_burst, _tokens + (now - _refilledAt) / _nanosPerToken);
+        _refilledAt = now;
+        // tokens below zero are owed to requests already waiting
+        long wait = _tokens >= 1 ? 0L : (long) Math.ceil((1 - _tokens) * _nanosPerToken);
+        if (wait > _maxWaitNanos) {
+            return -1L;
+        }
+        _tokens -= 1;
+        return wait;
+    }
+}
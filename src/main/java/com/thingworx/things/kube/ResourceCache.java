@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.JSON;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1Node;
+import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1Service;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The informers of a KubeThing: the cluster-wide caches, each started the first time it is requested, and the
+ * informers scoped by namespace and label selector that back the event watch.
+ */
+final class ResourceCache {
+    private static final JSON SNAPSHOT_JSON = new JSON();
+
+    private final ApiClient _client;
+    private final ApiClient _watchClient;
+    private final List<ResourceInformer<?>> _informers = new ArrayList<>();
+    private ResourceInformer<V1Pod> _pods;
+    private ResourceInformer<V1Service> _services;
+    private ResourceInformer<V1Node> _nodes;
+    private ResourceInformer<V1Deployment> _deployments;
+    private ChangeLog<V1Pod> _podChanges;
+    private ChangeLog<V1Service> _serviceChanges;
+    private ClusterSummary _summary;
+    private CacheSnapshot _restored;
+
+    ResourceCache(ApiClient client, ApiClient watchClient) {
+        this._client = client;
+        this._watchClient = watchClient;
+    }
+
+    synchronized ResourceInformer<V1Pod> pods() {
+        if (_pods == null) {
+            _pods = register(restore(new ResourceInformer<>("pods", ResourceSources.pods(_client, _watchClient, null, null), _watchClient, V1Pod::getMetadata), V1Pod.class));
+        }
+        return _pods;
+    }
+
+    synchronized ResourceInformer<V1Service> services() {
+        if (_services == null) {
+            _services = register(restore(new ResourceInformer<>("services", ResourceSources.services(_client, _watchClient, null, null), _watchClient, V1Service::getMetadata), V1Service.class));
+        }
+        return _services;
+    }
+
+    synchronized ResourceInformer<V1Node> nodes() {
+        if (_nodes == null) {
+            _nodes = register(new ResourceInformer<>("nodes", ResourceSources.nodes(_client, _watchClient, null), _watchClient, V1Node::getMetadata));
+        }
+        return _nodes;
+    }
+
+    synchronized ResourceInformer<V1Deployment> deployments() {
+        if (_deployments == null) {
+            _deployments = register(new ResourceInformer<>("deployments", ResourceSources.deployments(_client, _watchClient, null, null), _watchClient, V1Deployment::getMetadata));
+        }
+        return _deployments;
+    }
+
+    /**
+     * Returns the change log of the cluster-wide pod cache, which records changes from the first time it is requested.
+     */
+    synchronized ChangeLog<V1Pod> podChanges(int capacity) {
+        if (_podChanges == null) {
+            _podChanges = new ChangeLog<>(pods(), V1Pod::getMetadata, capacity);
+            _pods.addListener(_podChanges);
+        } else {
+            _podChanges.setCapacity(capacity);
+        }
+        return _podChanges;
+    }
+
+    synchronized ChangeLog<V1Service> serviceChanges(int capacity) {
+        if (_serviceChanges == null) {
+            _serviceChanges = new ChangeLog<>(services(), V1Service::getMetadata, capacity);
+            _services.addListener(_serviceChanges);
+        } else {
+            _serviceChanges.setCapacity(capacity);
+        }
+        return _serviceChanges;
+    }
+
+    /**
+     * Returns the summary of the cluster-wide pod, node and deployment caches, built from what they hold the first time
+     * it is requested and then kept up to date by their changes.
+     */
+    synchronized ClusterSummary summary() {
+        if (_summary == null) {
+            _summary = new ClusterSummary();
+            pods().addListenerWithReplay(_summary.podListener);
+            nodes().addListenerWithReplay(_summary.nodeListener);
+            deployments().addListenerWithReplay(_summary.deploymentListener);
+        }
+        return _summary;
+    }
+
+    synchronized boolean isSummarySynced() {
+        return _summary != null && _pods.isSynced() && _nodes.isSynced() && _deployments.isSynced();
+    }
+
+    /**
+     * Starts an informer on the pods of one namespace, or of all namespaces when namespace is null, that match a label
+     * selector. It is stopped with the cache.
+     */
+    synchronized ResourceInformer<V1Pod> watchPods(String name, String namespace, String labelSelector) {
+        return register(new ResourceInformer<>(name, ResourceSources.pods(_client, _watchClient, namespace, labelSelector), _watchClient, V1Pod::getMetadata));
+    }
+
+    synchronized ResourceInformer<V1Deployment> watchDeployments(String name, String namespace, String labelSelector) {
+        return register(new ResourceInformer<>(name, ResourceSources.deployments(_client, _watchClient, namespace, labelSelector), _watchClient, V1Deployment::getMetadata));
+    }
+
+    /**
+     * Keeps a snapshot to fill the cluster-wide caches from when they are first requested.
+     */
+    synchronized void restoreFrom(CacheSnapshot snapshot) {
+        _restored = snapshot;
+    }
+
+    /**
+     * Returns the resourceVersions of the cluster-wide caches, which change whenever their contents do.
+     */
+    synchronized String getSnapshotVersions() {
+        return (_pods == null ? "" : _pods.getResourceVersion()) + "/" + (_services == null ? "" : _services.getResourceVersion());
+    }
+
+    /**
+     * Returns a snapshot of the cluster-wide caches that finished their first list, or null when there is none.
+     */
+    CacheSnapshot snapshot(String server) {
+        List<ResourceInformer<?>> informers = new ArrayList<>();
+        synchronized (this) {
+            if (_pods != null) {
+                informers.add(_pods);
+            }
+            if (_services != null) {
+                informers.add(_services);
+            }
+        }
+        Map<String, CacheSnapshot.Entry> entries = new LinkedHashMap<>();
+        for (ResourceInformer<?> informer : informers) {
+            // read the version before the objects: objects that changed in between are replayed unchanged by the
+            // watch that resumes from it
+            String resourceVersion = informer.getResourceVersion();
+            if (!informer.isSynced() || resourceVersion == null) {
+                continue;
+            }
+            List<String> items = informer.list(null).stream().map(SNAPSHOT_JSON::serialize).collect(Collectors.toList());
+            entries.put(informer.getName(), new CacheSnapshot.Entry(informer.getName(), resourceVersion, items));
+        }
+        return entries.isEmpty() ? null : new CacheSnapshot(server, System.currentTimeMillis(), entries);
+    }
+
+    synchronized List<ResourceInformer<?>> getInformers() {
+        return new ArrayList<>(_informers);
+    }
+
+    synchronized void stop() {
+        for (ResourceInformer<?> informer : _informers) {
+            informer.stop();
+        }
+    }
+
+    /**
+     * Stops an informer started by one of the watch methods.
+     */
+    synchronized void stop(ResourceInformer<?> informer) {
+        informer.stop();
+        _informers.remove(informer);
+    }
+
+    private <T> ResourceInformer<T> restore(ResourceInformer<T> informer, Type type) {
+        // each entry is used once, drop it to free the JSON
+        CacheSnapshot.Entry entry = _restored == null ? null : _restored.entries.remove(informer.getName());
+        if (entry != null) {
+            // decoding dominates the restore of a large cluster, spread it over the cores
+            Collection<T> items = entry.items.parallelStream().<T>map(json -> SNAPSHOT_JSON.deserialize(json, type)).collect(Collectors.toList());
+            informer.restore(items, entry.resourceVersion, _restored.savedAt);
+        }
+        return informer;
+    }
+
+    private <T> ResourceInformer<T> register(ResourceInformer<T> informer) {
+        _informers.add(informer);
+        informer.start();
+        return informer;
+    }
+}
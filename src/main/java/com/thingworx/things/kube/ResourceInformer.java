@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.Call;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.util.Watch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Keeps an in-memory copy of one resource type: one paged list, then a watch that resumes from the last resourceVersion.
+ * The copy is indexed namespace -> name -> object and can be read from any thread.
+ */
+class ResourceInformer<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceInformer.class);
+    static final int LIST_PAGE_SIZE = 500;
+    static final int WATCH_TIMEOUT_SECONDS = 300;
+    private static final long MIN_BACKOFF = 1000L;
+    private static final long MAX_BACKOFF = 30000L;
+
+    /**
+     * Issues the list and watch requests of one resource type.
+     */
+    interface Source<T> {
+        ListPage<T> list(String continueToken, int limit) throws ApiException;
+
+        Call watchCall(String resourceVersion, int timeoutSeconds) throws ApiException;
+
+        Type watchType();
+    }
+
+    /**
+     * Notified on the informer thread of every change to the copy: oldObject is null for an added object and newObject
+     * is null for a deleted one. After a relist, the differences with the previous copy are notified.
+     * Listeners must return quickly, as the watch is not read while they run.
+     */
+    interface Listener<T> {
+        void onChange(T oldObject, T newObject);
+    }
+
+    static final class ListPage<T> {
+        final List<T> items;
+        final String resourceVersion;
+        final String continueToken;
+
+        ListPage(List<T> items, String resourceVersion, String continueToken) {
+            this.items = items == null ? Collections.<T>emptyList() : items;
+            this.resourceVersion = resourceVersion;
+            this.continueToken = continueToken == null || continueToken.isEmpty() ? null : continueToken;
+        }
+    }
+
+    private final String _name;
+    private final Source<T> _source;
+    private final ApiClient _watchClient;
+    private final Function<T, V1ObjectMeta> _metadata;
+    private final List<Listener<T>> _listeners = new CopyOnWriteArrayList<>();
+    // held while the copy changes and its listeners are notified
+    private final Object _changeLock = new Object();
+
+    private volatile Map<String, Map<String, T>> _index = new ConcurrentHashMap<>();
+    private volatile String _resourceVersion;
+    private volatile boolean _synced;
+    private volatile long _lastSyncTime;
+    private volatile long _lastContactTime;
+    private volatile String _lastError;
+    private volatile boolean _running;
+    private volatile boolean _restored;
+    private volatile Watch<T> _watch;
+    private Thread _thread;
+
+    ResourceInformer(String name, Source<T> source, ApiClient watchClient, Function<T, V1ObjectMeta> metadata) {
+        this._name = name;
+        this._source = source;
+        this._watchClient = watchClient;
+        this._metadata = metadata;
+    }
+
+    void addListener(Listener<T> listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * Adds a listener that is first notified of every object of the copy as added, on the calling thread, so that it
+     * can build its state from the copy and then follow the changes without missing or repeating one.
+     */
+    void addListenerWithReplay(Listener<T> listener) {
+        synchronized (_changeLock) {
+            for (T item : list(null)) {
+                listener.onChange(null, item);
+            }
+            _listeners.add(listener);
+        }
+    }
+
+    void removeListener(Listener<T> listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Fills the copy from a snapshot before the informer is started. The informer then resumes the watch from the
+     * snapshot resourceVersion instead of listing, and relists when the API server no longer has that version.
+     * Listeners are not notified. The copy was last in contact with the API server when the snapshot was saved, so an
+     * old snapshot stays stale until the resumed watch delivers an event or ends without error: a watch that connects
+     * and then answers 410 Gone must not make it look current while the relist runs.
+     */
+    synchronized void restore(Collection<T> items, String resourceVersion, long savedAt) {
+        if (_running) {
+            throw new IllegalStateException("Informer " + _name + " is already running");
+        }
+        Map<String, Map<String, T>> index = new ConcurrentHashMap<>();
+        for (T item : items) {
+            V1ObjectMeta meta = _metadata.apply(item);
+            index.computeIfAbsent(namespaceOf(meta), k -> new ConcurrentHashMap<>()).put(meta.getName(), item);
+        }
+        _index = index;
+        _resourceVersion = resourceVersion;
+        _synced = true;
+        _lastSyncTime = savedAt;
+        _lastContactTime = savedAt;
+        _restored = true;
+    }
+
+    synchronized void start() {
+        if (_running) {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(this::run, "KubeInformer-" + _name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    synchronized void stop() {
+        _running = false;
+        closeWatch();
+        if (_thread != null) {
+            _thread.interrupt();
+            _thread = null;
+        }
+    }
+
+    /**
+     * Returns the cached objects of a namespace, or of every namespace when namespace is null.
+     */
+    Collection<T> list(String namespace) {
+        Map<String, Map<String, T>> index = _index;
+        if (namespace != null) {
+            Map<String, T> byName = index.get(namespace);
+            return byName == null ? Collections.<T>emptyList() : new ArrayList<>(byName.values());
+        }
+        List<T> all = new ArrayList<>();
+        for (Map<String, T> byName : index.values()) {
+            all.addAll(byName.values());
+        }
+        return all;
+    }
+
+    T get(String namespace, String name) {
+        Map<String, T> byName = _index.get(namespace == null ? "" : namespace);
+        return byName == null ? null : byName.get(name);
+    }
+
+    int size() {
+        int size = 0;
+        for (Map<String, T> byName : _index.values()) {
+            size += byName.size();
+        }
+        return size;
+    }
+
+    String getName() {
+        return _name;
+    }
+
+    boolean isRunning() {
+        return _running;
+    }
+
+    boolean isSynced() {
+        return _synced;
+    }
+
+    /**
+     * The cache is stale when it never finished a list, or has not heard from the API server for longer than staleAfter.
+     */
+    boolean isStale(long staleAfter) {
+        return !_synced || System.currentTimeMillis() - _lastContactTime > staleAfter;
+    }
+
+    String getResourceVersion() {
+        return _resourceVersion;
+    }
+
+    long getLastSyncTime() {
+        return _lastSyncTime;
+    }
+
+    long getLastContactTime() {
+        return _lastContactTime;
+    }
+
+    String getLastError() {
+        return _lastError;
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF;
+        while (_running) {
+            try {
+                if (_resourceVersion == null) {
+                    relist();
+                }
+                watch();
+                backoff = MIN_BACKOFF;
+            } catch (ApiException ex) {
+                if (ex.getCode() == HttpURLConnection.HTTP_GONE) {
+                    LOGGER.info("Informer " + _name + " resourceVersion " + _resourceVersion + " expired, relisting");
+                    _resourceVersion = null;
+                    continue;
+                }
+                backoff = onFailure(ex, backoff);
+            } catch (Exception ex) {
+                backoff = onFailure(ex, backoff);
+            }
+        }
+    }
+
+    private long onFailure(Exception ex, long backoff) {
+        if (!_running) {
+            return backoff;
+        }
+        _lastError = ex.getMessage();
+        LOGGER.warn("Informer " + _name + " failed, retrying in " + backoff + "ms", ex);
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF);
+    }
+
+    private void relist() throws ApiException {
+        Map<String, Map<String, T>> index = new ConcurrentHashMap<>();
+        String continueToken = null;
+        String resourceVersion;
+        do {
+            ListPage<T> page = _source.list(continueToken, LIST_PAGE_SIZE);
+            for (T item : page.items) {
+                V1ObjectMeta meta = _metadata.apply(item);
+                index.computeIfAbsent(namespaceOf(meta), k -> new ConcurrentHashMap<>()).put(meta.getName(), item);
+            }
+            resourceVersion = page.resourceVersion;
+            continueToken = page.continueToken;
+        } while (continueToken != null && _running);
+
+        synchronized (_changeLock) {
+            Map<String, Map<String, T>> previous = _index;
+            _index = index;
+            if (!_listeners.isEmpty()) {
+                notifyDifferences(previous, index);
+            }
+        }
+        _resourceVersion = resourceVersion;
+        _synced = true;
+        _lastSyncTime = System.currentTimeMillis();
+        _lastContactTime = _lastSyncTime;
+        _lastError = null;
+        _restored = false;
+    }
+
+    private void watch() throws Exception {
+        Watch<T> watch = Watch.createWatch(_watchClient, _source.watchCall(_resourceVersion, WATCH_TIMEOUT_SECONDS), _source.watchType());
+        _watch = watch;
+        if (!_restored) {
+            _lastContactTime = System.currentTimeMillis();
+        }
+        try {
+            for (Watch.Response<T> event : watch) {
+                if (!_running) {
+                    break;
+                }
+                if ("ERROR".equals(event.type)) {
+                    // the client only fills in status when the error cannot be parsed as T; watch errors are
+                    // in practice an expired resourceVersion, so treat an unknown error as 410 Gone
+                    int code = event.status != null && event.status.getCode() != null ? event.status.getCode() : HttpURLConnection.HTTP_GONE;
+                    throw new ApiException(code, event.status != null ? event.status.getMessage() : "watch error");
+                }
+                _restored = false;
+                _lastContactTime = System.currentTimeMillis();
+                apply(event.type, event.object);
+            }
+            if (_running) {
+                _restored = false;
+                _lastContactTime = System.currentTimeMillis();
+            }
+        } catch (RuntimeException ex) {
+            // the watch iterator wraps socket errors; a closed watch during stop() is expected
+            if (_running) {
+                throw ex;
+            }
+        } finally {
+            closeWatch();
+        }
+    }
+
+    private void apply(String type, T object) {
+        if (object == null) {
+            return;
+        }
+        V1ObjectMeta meta = _metadata.apply(object);
+        String namespace = namespaceOf(meta);
+        synchronized (_changeLock) {
+            if ("DELETED".equals(type)) {
+                Map<String, T> byName = _index.get(namespace);
+                T previous = byName == null ? null : byName.remove(meta.getName());
+                // the deletion of an object the copy never held changes nothing
+                if (previous != null) {
+                    notifyListeners(previous, null);
+                }
+            } else {
+                T previous = _index.computeIfAbsent(namespace, k -> new ConcurrentHashMap<>()).put(meta.getName(), object);
+                notifyListeners(previous, object);
+            }
+        }
+        if (meta.getResourceVersion() != null) {
+            _resourceVersion = meta.getResourceVersion();
+        }
+    }
+
+    private void notifyDifferences(Map<String, Map<String, T>> previous, Map<String, Map<String, T>> current) {
+        for (Map.Entry<String, Map<String, T>> namespace : current.entrySet()) {
+            Map<String, T> before = previous.get(namespace.getKey());
+            for (Map.Entry<String, T> item : namespace.getValue().entrySet()) {
+                T old = before == null ? null : before.get(item.getKey());
+                if (old == null || !Objects.equals(_metadata.apply(old).getResourceVersion(), _metadata.apply(item.getValue()).getResourceVersion())) {
+                    notifyListeners(old, item.getValue());
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, T>> namespace : previous.entrySet()) {
+            Map<String, T> after = current.get(namespace.getKey());
+            for (Map.Entry<String, T> item : namespace.getValue().entrySet()) {
+                if (after == null || !after.containsKey(item.getKey())) {
+                    notifyListeners(item.getValue(), null);
+                }
+            }
+        }
+    }
+
+    private void notifyListeners(T oldObject, T newObject) {
+        for (Listener<T> listener : _listeners) {
+            try {
+                listener.onChange(oldObject, newObject);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Listener of informer " + _name + " failed", ex);
+            }
+        }
+    }
+
+    private void closeWatch() {
+        Watch<T> watch = _watch;
+        _watch = null;
+        if (watch != null) {
+            try {
+                watch.close();
+            } catch (Exception ex) {
+                LOGGER.debug("Could not close watch of informer " + _name, ex);
+            }
+        }
+    }
+
+    private static String namespaceOf(V1ObjectMeta meta) {
+        return meta.getNamespace() == null ? "" : meta.getNamespace();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSONPath-like accessor into a Kubernetes model object, compiled once against the model class.
+ * <p>
+ * Paths use the JSON property names of the API, e.g. {@code status.hostIP}, {@code status.containerStatuses[0].restartCount}
+ * or {@code metadata.labels['app.kubernetes.io/name']}. A leading {@code $.} is ignored.
+ */
+final class ResourcePath {
+    private final String _path;
+    private final Step[] _steps;
+    private final List<String> _jsonNames;
+    private final Type _valueType;
+
+    private ResourcePath(String path, Step[] steps, List<String> jsonNames, Type valueType) {
+        this._path = path;
+        this._steps = steps;
+        this._jsonNames = jsonNames;
+        this._valueType = valueType;
+    }
+
+    /**
+     * Compiles a path against a model class, or returns null when the class has no such property.
+     */
+    static ResourcePath compile(String path, Class<?> rootType) {
+        List<String> segments = parse(path);
+        if (segments.isEmpty()) {
+            return null;
+        }
+        Step[] steps = new Step[segments.size()];
+        Type current = rootType;
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            Class<?> raw = rawType(current);
+            if (raw == null) {
+                return null;
+            }
+            if (segment.startsWith("[")) {
+                if (!List.class.isAssignableFrom(raw)) {
+                    return null;
+                }
+                steps[i] = new IndexStep(Integer.parseInt(segment.substring(1, segment.length() - 1)));
+                current = typeArgument(current, 0);
+            } else if (Map.class.isAssignableFrom(raw)) {
+                steps[i] = new KeyStep(segment);
+                current = typeArgument(current, 1);
+            } else {
+                Method getter = findGetter(raw, segment);
+                if (getter == null) {
+                    return null;
+                }
+                steps[i] = new GetterStep(getter);
+                current = getter.getGenericReturnType();
+            }
+        }
+        return new ResourcePath(path, steps, Collections.unmodifiableList(segments), current);
+    }
+
+    /**
+     * Reads the value at this path, or null when any element along the path is missing.
+     */
+    Object read(Object root) {
+        return read(root, 0);
+    }
+
+    /**
+     * Reads the rest of this path from the value found after its first segments.
+     */
+    Object read(Object value, int fromSegment) {
+        Object current = value;
+        for (int i = fromSegment; i < _steps.length; i++) {
+            if (current == null) {
+                return null;
+            }
+            current = _steps[i].apply(current);
+        }
+        return current;
+    }
+
+    String getPath() {
+        return _path;
+    }
+
+    /**
+     * The path as JSON segments: property names, map keys and {@code [index]} entries.
+     */
+    List<String> getJsonNames() {
+        return _jsonNames;
+    }
+
+    /**
+     * The declared type of the value at this path, e.g. String for metadata.name or DateTime for
+     * metadata.creationTimestamp.
+     */
+    Type getValueType() {
+        return _valueType;
+    }
+
+    @Override
+    public String toString() {
+        return _path;
+    }
+
+    private static List<String> parse(String path) {
+        String p = path.trim();
+        if (p.startsWith("$.")) {
+            p = p.substring(2);
+        } else if (p.startsWith("$")) {
+            p = p.substring(1);
+        }
+        List<String> segments = new ArrayList<>();
+        int i = 0;
+        while (i < p.length()) {
+            char c = p.charAt(i);
+            if (c == '.') {
+                i++;
+            } else if (c == '[') {
+                int close = p.indexOf(']', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unterminated [ in path " + path);
+                }
+                String inner = p.substring(i + 1, close).trim();
+                if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')) {
+                    segments.add(inner.substring(1, inner.length() - 1));
+                } else {
+                    segments.add("[" + inner + "]");
+                }
+                i = close + 1;
+            } else {
+                int end = i;
+                while (end < p.length() && p.charAt(end) != '.' && p.charAt(end) != '[') {
+                    end++;
+                }
+                segments.add(p.substring(i, end));
+                i = end;
+            }
+        }
+        return segments;
+    }
+
+    private static Method findGetter(Class<?> type, String jsonName) {
+        String propertyName = jsonName;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                if (serializedName != null && serializedName.value().equals(jsonName)) {
+                    propertyName = field.getName();
+                }
+            }
+        }
+        String capitalized = Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+        for (String candidate : new String[]{"get" + capitalized, "is" + capitalized}) {
+            try {
+                Method method = type.getMethod(candidate);
+                if (method.getReturnType() != void.class) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+                // try the next naming convention
+            }
+        }
+        return null;
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return null;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) {
+                return arguments[index];
+            }
+        }
+        return Object.class;
+    }
+
+    private interface Step {
+        Object apply(Object target);
+    }
+
+    private static final class GetterStep implements Step {
+        private final Method _getter;
+
+        GetterStep(Method getter) {
+            this._getter = getter;
+        }
+
+        @Override
+        public Object apply(Object target) {
+            try {
+                return _getter.invoke(target);
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("Could not read " + _getter.getName() + " of " + target.getClass().getSimpleName(), ex);
+            }
+        }
+    }
+
+    private static final class KeyStep implements Step {
+        private final String _key;
+
+        KeyStep(String key) {
+            this._key = key;
+        }
+
+        @Override
+        public Object apply(Object target) {
+            return ((Map<?, ?>) target).get(_key);
+        }
+    }
+
+    private static final class IndexStep implements Step {
+        private final int _index;
+
+        IndexStep(int index) {
+            this._index = index;
+        }
+
+        @Override
+        public Object apply(Object target) {
+            List<?> list = (List<?>) target;
+            return _index < list.size() ? list.get(_index) : null;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.thingworx.data.util.InfoTableInstanceFactory;
+import com.thingworx.metadata.DataShapeDefinition;
+import com.thingworx.metadata.FieldDefinition;
+import com.thingworx.types.BaseTypes;
+import com.thingworx.types.InfoTable;
+import com.thingworx.types.collections.ValueCollection;
+import com.thingworx.types.primitives.BooleanPrimitive;
+import com.thingworx.types.primitives.DatetimePrimitive;
+import com.thingworx.types.primitives.IPrimitiveType;
+import com.thingworx.types.primitives.JSONPrimitive;
+import com.thingworx.types.primitives.StringPrimitive;
+import io.kubernetes.client.JSON;
+import io.kubernetes.client.custom.IntOrString;
+import io.kubernetes.client.custom.Quantity;
+import org.joda.time.DateTime;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills InfoTable rows from Kubernetes model objects. Compiled once per DataShape and model class: every DataShape field
+ * gets a precompiled {@link ResourcePath} and a converter for its base type, so a row is built in a single pass.
+ * <p>
+ * A field is resolved, in order, from a path in its description starting with {@code $.}, from the well-known column
+ * names of this extension (podName, podStatus, ...), or from its own name looked up at the top level and under
+ * metadata, spec and status. Fields that cannot be resolved are left empty.
+ */
+final class ResourceRowMapper<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceRowMapper.class);
+    private static final JSON JSON_SERIALIZER = new JSON();
+    private static final String[] NAME_LOOKUP_PREFIXES = {"", "metadata.", "spec.", "status."};
+    private static final Map<String, String> COLUMN_ALIASES = new HashMap<>();
+
+    static {
+        COLUMN_ALIASES.put("podName", "metadata.name");
+        COLUMN_ALIASES.put("podStatus", "status.phase");
+        COLUMN_ALIASES.put("serviceName", "metadata.name");
+        COLUMN_ALIASES.put("deploymentName", "metadata.name");
+        COLUMN_ALIASES.put("nodeName", "metadata.name");
+    }
+
+    private final DataShapeDefinition _definition;
+    private final Column[] _columns;
+    private volatile ProjectedDecoder _decoder;
+
+    private ResourceRowMapper(DataShapeDefinition definition, Column[] columns) {
+        this._definition = definition;
+        this._columns = columns;
+    }
+
+    static <T> ResourceRowMapper<T> compile(DataShapeDefinition definition, Class<T> type) {
+        List<Field> fields = new ArrayList<>();
+        for (FieldDefinition field : definition.getFields().values()) {
+            fields.add(new Field(field.getName(), field.getDescription(), field.getBaseType()));
+        }
+        return compile(definition, fields, type);
+    }
+
+    /**
+     * Compiles the given fields, which need not come from the definition; the benchmarks build their fields without a
+     * running platform.
+     */
+    static <T> ResourceRowMapper<T> compile(DataShapeDefinition definition, List<Field> fields, Class<T> type) {
+        List<Column> columns = new ArrayList<>();
+        for (Field field : fields) {
+            ResourcePath path = resolve(field, type);
+            if (path == null) {
+                LOGGER.debug("DataShape field " + field.name + " has no matching property on " + type.getSimpleName());
+                continue;
+            }
+            columns.add(new Column(field.name, field.baseType, path));
+        }
+        return new ResourceRowMapper<>(definition, columns.toArray(new Column[0]));
+    }
+
+    InfoTable createInfoTable() throws Exception {
+        return InfoTableInstanceFactory.createInfoTableFromDataShape(_definition);
+    }
+
+    DataShapeDefinition getDefinition() {
+        return _definition;
+    }
+
+    void addRow(InfoTable it, T item) throws Exception {
+        it.addRow(toRow(item));
+    }
+
+    ValueCollection toRow(T item) throws Exception {
+        ValueCollection values = new ValueCollection();
+        for (Column column : _columns) {
+            Object value = column.path.read(item);
+            if (value != null) {
+                values.put(column.name, convert(value, column.baseType));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Builds a row from the values read by the {@link #getDecoder() projected decoder}, one per path.
+     */
+    ValueCollection toProjectedRow(Object[] projected) throws Exception {
+        ValueCollection values = new ValueCollection();
+        for (int i = 0; i < _columns.length; i++) {
+            if (projected[i] != null) {
+                values.put(_columns[i].name, convert(projected[i], _columns[i].baseType));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The paths read by the columns, in column order.
+     */
+    List<ResourcePath> getPaths() {
+        List<ResourcePath> paths = new ArrayList<>(_columns.length);
+        for (Column column : _columns) {
+            paths.add(column.path);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the decoder that reads only the paths of this mapper from a list response.
+     */
+    ProjectedDecoder getDecoder() {
+        ProjectedDecoder decoder = _decoder;
+        if (decoder == null) {
+            decoder = new ProjectedDecoder(getPaths());
+            _decoder = decoder;
+        }
+        return decoder;
+    }
+
+    /**
+     * Identifies the values this mapper reads, so that identical projected requests of mappers that read different
+     * values are not coalesced.
+     */
+    String getProjectionKey() {
+        StringBuilder key = new StringBuilder();
+        for (Column column : _columns) {
+            key.append(column.path.getPath()).append(',');
+        }
+        return key.toString();
+    }
+
+    private static ResourcePath resolve(Field field, Class<?> type) {
+        String description = field.description;
+        if (description != null && description.trim().startsWith("$.")) {
+            return ResourcePath.compile(description.trim(), type);
+        }
+        String alias = COLUMN_ALIASES.get(field.name);
+        if (alias != null) {
+            return ResourcePath.compile(alias, type);
+        }
+        for (String prefix : NAME_LOOKUP_PREFIXES) {
+            ResourcePath path = ResourcePath.compile(prefix + field.name, type);
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    static IPrimitiveType<?, ?> convert(Object value, BaseTypes baseType) throws Exception {
+        switch (baseType) {
+            case STRING:
+                return new StringPrimitive(toText(value));
+            case NUMBER:
+                return BaseTypes.ConvertToPrimitive(toNumber(value), BaseTypes.NUMBER);
+            case INTEGER:
+                return BaseTypes.ConvertToPrimitive(toNumber(value).intValue(), BaseTypes.INTEGER);
+            case LONG:
+                return BaseTypes.ConvertToPrimitive(toNumber(value).longValue(), BaseTypes.LONG);
+            case BOOLEAN:
+                return new BooleanPrimitive(value instanceof Boolean ? (Boolean) value : Boolean.valueOf(toText(value)));
+            case DATETIME:
+                return value instanceof DateTime ? new DatetimePrimitive((DateTime) value) : BaseTypes.ConvertToPrimitive(toText(value), baseType);
+            case JSON:
+                return new JSONPrimitive(new JSONObject(JSON_SERIALIZER.serialize(value)));
+            default:
+                return BaseTypes.ConvertToPrimitive(value, baseType);
+        }
+    }
+
+    private static String toText(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Quantity) {
+            return ((Quantity) value).toSuffixedString();
+        }
+        if (value instanceof IntOrString) {
+            IntOrString intOrString = (IntOrString) value;
+            return intOrString.isInteger() ? intOrString.getIntValue().toString() : intOrString.getStrValue();
+        }
+        return JSON_SERIALIZER.serialize(value);
+    }
+
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof Quantity) {
+            return ((Quantity) value).getNumber();
+        }
+        if (value instanceof IntOrString && ((IntOrString) value).isInteger()) {
+            return ((IntOrString) value).getIntValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        if (value instanceof DateTime) {
+            return ((DateTime) value).getMillis();
+        }
+        return Double.valueOf(toText(value));
+    }
+
+    /**
+     * A DataShape field: its name, its description, which may hold a path, and its base type.
+     */
+    static final class Field {
+        final String name;
+        final String description;
+        final BaseTypes baseType;
+
+        Field(String name, String description, BaseTypes baseType) {
+            this.name = name;
+            this.description = description;
+            this.baseType = baseType;
+        }
+    }
+
+    private static final class Column {
+        final String name;
+        final BaseTypes baseType;
+        final ResourcePath path;
+
+        Column(String name, BaseTypes baseType, ResourcePath path) {
+            this.name = name;
+            this.baseType = baseType;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.Call;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.AppsV1Api;
+import io.kubernetes.client.apis.CoreV1Api;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1DeploymentList;
+import io.kubernetes.client.models.V1Node;
+import io.kubernetes.client.models.V1NodeList;
+import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1PodList;
+import io.kubernetes.client.models.V1Service;
+import io.kubernetes.client.models.V1ServiceList;
+import io.kubernetes.client.util.Watch;
+
+import java.lang.reflect.Type;
+
+/**
+ * List and watch requests of the resource types the informers keep, in one namespace or in all namespaces when the
+ * namespace is null, optionally restricted by a label selector evaluated by the API server. Nodes belong to no
+ * namespace.
+ */
+final class ResourceSources {
+
+    private ResourceSources() {
+    }
+
+    static ResourceInformer.Source<V1Pod> pods(ApiClient client, ApiClient watchClient, String namespace, String labelSelector) {
+        CoreV1Api api = new CoreV1Api(client);
+        CoreV1Api watchApi = new CoreV1Api(watchClient);
+        return new ResourceInformer.Source<V1Pod>() {
+            @Override
+            public ResourceInformer.ListPage<V1Pod> list(String continueToken, int limit) throws ApiException {
+                V1PodList list = namespace == null
+                        ? api.listPodForAllNamespaces(continueToken, null, null, labelSelector, limit, null, null, null, Boolean.FALSE)
+                        : api.listNamespacedPod(namespace, null, null, continueToken, null, labelSelector, limit, null, null, Boolean.FALSE);
+                return new ResourceInformer.ListPage<>(list.getItems(), list.getMetadata().getResourceVersion(), list.getMetadata().getContinue());
+            }
+
+            @Override
+            public Call watchCall(String resourceVersion, int timeoutSeconds) throws ApiException {
+                return namespace == null
+                        ? watchApi.listPodForAllNamespacesCall(null, null, null, labelSelector, null, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null)
+                        : watchApi.listNamespacedPodCall(namespace, null, null, null, null, labelSelector, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null);
+            }
+
+            @Override
+            public Type watchType() {
+                return new TypeToken<Watch.Response<V1Pod>>() {
+                }.getType();
+            }
+        };
+    }
+
+    static ResourceInformer.Source<V1Service> services(ApiClient client, ApiClient watchClient, String namespace, String labelSelector) {
+        CoreV1Api api = new CoreV1Api(client);
+        CoreV1Api watchApi = new CoreV1Api(watchClient);
+        return new ResourceInformer.Source<V1Service>() {
+            @Override
+            public ResourceInformer.ListPage<V1Service> list(String continueToken, int limit) throws ApiException {
+                V1ServiceList list = namespace == null
+                        ? api.listServiceForAllNamespaces(continueToken, null, null, labelSelector, limit, null, null, null, Boolean.FALSE)
+                        : api.listNamespacedService(namespace, null, null, continueToken, null, labelSelector, limit, null, null, Boolean.FALSE);
+                return new ResourceInformer.ListPage<>(list.getItems(), list.getMetadata().getResourceVersion(), list.getMetadata().getContinue());
+            }
+
+            @Override
+            public Call watchCall(String resourceVersion, int timeoutSeconds) throws ApiException {
+                return namespace == null
+                        ? watchApi.listServiceForAllNamespacesCall(null, null, null, labelSelector, null, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null)
+                        : watchApi.listNamespacedServiceCall(namespace, null, null, null, null, labelSelector, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null);
+            }
+
+            @Override
+            public Type watchType() {
+                return new TypeToken<Watch.Response<V1Service>>() {
+                }.getType();
+            }
+        };
+    }
+
+    static ResourceInformer.Source<V1Deployment> deployments(ApiClient client, ApiClient watchClient, String namespace, String labelSelector) {
+        AppsV1Api api = new AppsV1Api(client);
+        AppsV1Api watchApi = new AppsV1Api(watchClient);
+        return new ResourceInformer.Source<V1Deployment>() {
+            @Override
+            public ResourceInformer.ListPage<V1Deployment> list(String continueToken, int limit) throws ApiException {
+                V1DeploymentList list = namespace == null
+                        ? api.listDeploymentForAllNamespaces(continueToken, null, null, labelSelector, limit, null, null, null, Boolean.FALSE)
+                        : api.listNamespacedDeployment(namespace, null, null, continueToken, null, labelSelector, limit, null, null, Boolean.FALSE);
+                return new ResourceInformer.ListPage<>(list.getItems(), list.getMetadata().getResourceVersion(), list.getMetadata().getContinue());
+            }
+
+            @Override
+            public Call watchCall(String resourceVersion, int timeoutSeconds) throws ApiException {
+                return namespace == null
+                        ? watchApi.listDeploymentForAllNamespacesCall(null, null, null, labelSelector, null, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null)
+                        : watchApi.listNamespacedDeploymentCall(namespace, null, null, null, null, labelSelector, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null);
+            }
+
+            @Override
+            public Type watchType() {
+                return new TypeToken<Watch.Response<V1Deployment>>() {
+                }.getType();
+            }
+        };
+    }
+
+    static ResourceInformer.Source<V1Node> nodes(ApiClient client, ApiClient watchClient, String labelSelector) {
+        CoreV1Api api = new CoreV1Api(client);
+        CoreV1Api watchApi = new CoreV1Api(watchClient);
+        return new ResourceInformer.Source<V1Node>() {
+            @Override
+            public ResourceInformer.ListPage<V1Node> list(String continueToken, int limit) throws ApiException {
+                V1NodeList list = api.listNode(null, null, continueToken, null, labelSelector, limit, null, null, Boolean.FALSE);
+                return new ResourceInformer.ListPage<>(list.getItems(), list.getMetadata().getResourceVersion(), list.getMetadata().getContinue());
+            }
+
+            @Override
+            public Call watchCall(String resourceVersion, int timeoutSeconds) throws ApiException {
+                return watchApi.listNodeCall(null, null, null, null, labelSelector, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null);
+            }
+
+            @Override
+            public Type watchType() {
+                return new TypeToken<Watch.Response<V1Node>>() {
+                }.getType();
+            }
+        };
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.apis.AppsV1Api;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1DeploymentCondition;
+import io.kubernetes.client.models.V1DeploymentList;
+import io.kubernetes.client.util.Watch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for deployments of one namespace to finish rolling out, with one list and then a watch instead of polling.
+ * A single deployment is watched with a metadata.name field selector; several deployments share one watch of the
+ * namespace and the events of other deployments are skipped.
+ * <p>
+ * A rollout is complete under the same rules as {@code kubectl rollout status}: the controller observed the latest
+ * generation, all desired replicas are updated, no old replicas remain and all updated replicas are available.
+ */
+final class RolloutWatch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RolloutWatch.class);
+    private static final Type WATCH_TYPE = new TypeToken<Watch.Response<V1Deployment>>() {
+    }.getType();
+    private static final int LIST_PAGE_SIZE = 500;
+
+    static final String COMPLETE = "Complete";
+    static final String TIMEOUT = "Timeout";
+    static final String NOT_FOUND = "NotFound";
+    static final String DELETED = "Deleted";
+    static final String FAILED = "Failed";
+
+    /**
+     * The outcome of one deployment. Times are in milliseconds from the start of the wait, -1 when not reached.
+     */
+    static final class Result {
+        final String namespace;
+        final String name;
+        String status = NOT_FOUND;
+        String message = "";
+        int desiredReplicas;
+        int updatedReplicas;
+        int availableReplicas;
+        long observedMillis = -1;
+        long updatedMillis = -1;
+        long availableMillis = -1;
+        long totalMillis;
+        int events;
+        private boolean _seen;
+        private boolean _done;
+
+        private Result(String namespace, String name) {
+            this.namespace = namespace;
+            this.name = name;
+        }
+
+        boolean isComplete() {
+            return COMPLETE.equals(status);
+        }
+    }
+
+    private RolloutWatch() {
+    }
+
+    /**
+     * Waits until every deployment has rolled out, failed or been deleted, or until the timeout counted from start
+     * (a System.nanoTime value) has passed. Returns one result per name, in the order given.
+     */
+    static List<Result> await(ApiClient client, ApiClient watchClient, String namespace, Collection<String> names,
+                              long start, long timeoutMillis) throws ApiException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String name : names) {
+            results.put(name, new Result(namespace, name));
+        }
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeoutMillis));
+        String fieldSelector = results.size() == 1 ? "metadata.name=" + names.iterator().next() : null;
+        AppsV1Api api = new AppsV1Api(client);
+        AppsV1Api watchApi = new AppsV1Api(watchClient);
+
+        String resourceVersion = list(api, namespace, fieldSelector, results, start);
+        while (pending(results) > 0 && System.nanoTime() < deadline) {
+            // the API server ends the watch at the deadline, rounded up to the second
+            long remaining = TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime() + TimeUnit.SECONDS.toNanos(1) - 1);
+            int timeoutSeconds = (int) Math.max(1L, Math.min(remaining, ResourceInformer.WATCH_TIMEOUT_SECONDS));
+            Watch<V1Deployment> watch = Watch.createWatch(watchClient, watchApi.listNamespacedDeploymentCall(namespace, null, null, null,
+                    fieldSelector, null, null, resourceVersion, timeoutSeconds, Boolean.TRUE, null, null), WATCH_TYPE);
+            try {
+                for (Watch.Response<V1Deployment> event : watch) {
+                    if ("ERROR".equals(event.type)) {
+                        int code = event.status != null && event.status.getCode() != null ? event.status.getCode() : HttpURLConnection.HTTP_GONE;
+                        if (code != HttpURLConnection.HTTP_GONE) {
+                            throw new ApiException(code, event.status != null ? event.status.getMessage() : "watch error");
+                        }
+                        // the resourceVersion of the list expired, start over from a new list
+                        resourceVersion = list(api, namespace, fieldSelector, results, start);
+                        break;
+                    }
+                    if (event.object == null || event.object.getMetadata() == null) {
+                        continue;
+                    }
+                    resourceVersion = event.object.getMetadata().getResourceVersion();
+                    Result result = results.get(event.object.getMetadata().getName());
+                    if (result == null || result._done) {
+                        continue;
+                    }
+                    result.events++;
+                    if ("DELETED".equals(event.type)) {
+                        finish(result, DELETED, "Deployment was deleted during the rollout", start);
+                    } else {
+                        update(result, event.object, start);
+                    }
+                    if (pending(results) == 0 || System.nanoTime() >= deadline) {
+                        break;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                // the watch iterator wraps socket errors
+                throw new ApiException(ex.getCause() != null ? ex.getCause() : ex);
+            } finally {
+                try {
+                    watch.close();
+                } catch (IOException ex) {
+                    LOGGER.debug("Could not close rollout watch of namespace " + namespace, ex);
+                }
+            }
+        }
+
+        for (Result result : results.values()) {
+            if (!result._done) {
+                if (result._seen) {
+                    finish(result, TIMEOUT, "Timed out with " + result.availableReplicas + " of " + result.desiredReplicas
+                            + " replicas available and " + result.updatedReplicas + " updated", start);
+                } else {
+                    finish(result, NOT_FOUND, "Deployment was not found", start);
+                }
+            }
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    private static String list(AppsV1Api api, String namespace, String fieldSelector, Map<String, Result> results, long start) throws ApiException {
+        String continueToken = null;
+        String resourceVersion;
+        do {
+            V1DeploymentList list = api.listNamespacedDeployment(namespace, null, null, continueToken, fieldSelector, null,
+                    LIST_PAGE_SIZE, null, null, Boolean.FALSE);
+            for (V1Deployment deployment : list.getItems()) {
+                Result result = results.get(deployment.getMetadata().getName());
+                if (result != null && !result._done) {
+                    update(result, deployment, start);
+                }
+            }
+            resourceVersion = list.getMetadata().getResourceVersion();
+            continueToken = list.getMetadata().getContinue();
+        } while (continueToken != null && !continueToken.isEmpty());
+        return resourceVersion;
+    }
+
+    private static void update(Result result, V1Deployment deployment, long start) {
+        result._seen = true;
+        long elapsed = elapsedMillis(start);
+        Long generation = deployment.getMetadata().getGeneration();
+        Long observedGeneration = deployment.getStatus() == null ? null : deployment.getStatus().getObservedGeneration();
+        int replicas = 0;
+        result.desiredReplicas = deployment.getSpec() == null || deployment.getSpec().getReplicas() == null ? 1 : deployment.getSpec().getReplicas();
+        result.updatedReplicas = 0;
+        result.availableReplicas = 0;
+        if (deployment.getStatus() != null) {
+            replicas = valueOrZero(deployment.getStatus().getReplicas());
+            result.updatedReplicas = valueOrZero(deployment.getStatus().getUpdatedReplicas());
+            result.availableReplicas = valueOrZero(deployment.getStatus().getAvailableReplicas());
+        }
+
+        // until the controller has seen the latest spec, the status describes the previous one
+        if (observedGeneration == null || (generation != null && observedGeneration < generation)) {
+            return;
+        }
+        if (result.observedMillis < 0) {
+            result.observedMillis = elapsed;
+        }
+        V1DeploymentCondition progressing = findCondition(deployment, "Progressing");
+        if (progressing != null && "ProgressDeadlineExceeded".equals(progressing.getReason())) {
+            finish(result, FAILED, progressing.getMessage() == null ? "Progress deadline exceeded" : progressing.getMessage(), start);
+            return;
+        }
+        if (result.updatedReplicas < result.desiredReplicas) {
+            return;
+        }
+        if (result.updatedMillis < 0) {
+            result.updatedMillis = elapsed;
+        }
+        if (replicas > result.updatedReplicas || result.availableReplicas < result.updatedReplicas) {
+            return;
+        }
+        result.availableMillis = elapsed;
+        finish(result, COMPLETE, result.availableReplicas + " of " + result.desiredReplicas + " replicas available", start);
+    }
+
+    private static void finish(Result result, String status, String message, long start) {
+        result.status = status;
+        result.message = message;
+        result.totalMillis = elapsedMillis(start);
+        result._done = true;
+    }
+
+    private static int pending(Map<String, Result> results) {
+        int pending = 0;
+        for (Result result : results.values()) {
+            if (!result._done) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private static V1DeploymentCondition findCondition(V1Deployment deployment, String type) {
+        if (deployment.getStatus() == null || deployment.getStatus().getConditions() == null) {
+            return null;
+        }
+        for (V1DeploymentCondition condition : deployment.getStatus().getConditions()) {
+            if (type.equals(condition.getType())) {
+                return condition;
+            }
+        }
+        return null;
+    }
+
+    private static int valueOrZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.thingworx.datashape.DataShape;
+import com.thingworx.entities.utils.EntityUtilities;
+import com.thingworx.relationships.RelationshipTypes.ThingworxRelationshipTypes;
+import org.joda.time.DateTime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled {@link ResourceRowMapper}s keyed by DataShape name and model class.
+ * The DataShape entity is looked up again at most once per revalidation interval, and the mapper is recompiled
+ * only when the DataShape was modified since it was compiled.
+ */
+final class RowMapperCache {
+    static final long REVALIDATE_INTERVAL = 5000L;
+
+    private final Map<String, Entry<?>> _entries = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    <T> ResourceRowMapper<T> get(String dataShape, Class<T> type) throws Exception {
+        String key = type.getName() + "/" + dataShape;
+        long now = System.currentTimeMillis();
+        Entry<T> entry = (Entry<T>) _entries.get(key);
+        if (entry != null && now - entry.checkedAt < REVALIDATE_INTERVAL) {
+            return entry.mapper;
+        }
+
+        DataShape ds = dataShape == null || dataShape.isEmpty() ? null : (DataShape) EntityUtilities.findEntity(dataShape, ThingworxRelationshipTypes.DataShape);
+        if (ds == null) {
+            _entries.remove(key);
+            throw new Exception("Could not execute query because the Datashape does not exist, or a Datashape was not specified [" + dataShape + "]");
+        }
+        DateTime lastModified = ds.GetLastModifiedDate();
+        long modified = lastModified == null ? 0L : lastModified.getMillis();
+        if (entry == null || entry.modified != modified) {
+            entry = new Entry<>(ResourceRowMapper.compile(ds.getDataShape(), type), modified, now);
+        } else {
+            entry = new Entry<>(entry.mapper, modified, now);
+        }
+        _entries.put(key, entry);
+        return entry.mapper;
+    }
+
+    private static final class Entry<T> {
+        final ResourceRowMapper<T> mapper;
+        final long modified;
+        final long checkedAt;
+
+        Entry(ResourceRowMapper<T> mapper, long modified, long checkedAt) {
+            this.mapper = mapper;
+            this.modified = modified;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
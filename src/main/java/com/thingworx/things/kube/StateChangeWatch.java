@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.models.V1ContainerStatus;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1Pod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Turns pod and deployment changes seen by two informers into state changes: pod phase, container restarts and
+ * deployment availability.
+ * <p>
+ * Changes are not delivered on the informer threads. They wait in a bounded map for the debounce time, where a newer
+ * change of the same pod, container or deployment replaces them; a transition that returns to its starting state
+ * within that time is dropped. A separate thread delivers the due changes, so a slow subscriber delays the
+ * delivery of changes but never the watches. When the map is full, the oldest change is dropped and counted.
+ */
+class StateChangeWatch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StateChangeWatch.class);
+    private static final long COUNTS_INTERVAL = 5000L;
+    static final String POD_PHASE_CHANGED = "PodPhaseChanged";
+    static final String POD_RESTARTED = "PodRestarted";
+    static final String DEPLOYMENT_AVAILABLE = "DeploymentAvailable";
+    static final String DEPLOYMENT_UNAVAILABLE = "DeploymentUnavailable";
+    static final String AVAILABLE = "available";
+    static final String UNAVAILABLE = "unavailable";
+
+    enum Type {PHASE, RESTART, AVAILABILITY}
+
+    static final class StateChange {
+        final Type type;
+        final String namespace;
+        final String name;
+        final String container;
+        final String from;
+        String to;
+        String reason;
+        int readyReplicas;
+        int desiredReplicas;
+        final long firstSeen;
+        long due;
+
+        StateChange(Type type, String namespace, String name, String container, String from, String to, long firstSeen) {
+            this.type = type;
+            this.namespace = namespace;
+            this.name = name;
+            this.container = container;
+            this.from = from;
+            this.to = to;
+            this.firstSeen = firstSeen;
+        }
+
+        String getEventName() {
+            switch (type) {
+                case PHASE:
+                    return POD_PHASE_CHANGED;
+                case RESTART:
+                    return POD_RESTARTED;
+                default:
+                    return UNAVAILABLE.equals(to) ? DEPLOYMENT_UNAVAILABLE : DEPLOYMENT_AVAILABLE;
+            }
+        }
+
+        String key() {
+            return type + "/" + namespace + "/" + name + "/" + (container == null ? "" : container);
+        }
+    }
+
+    /**
+     * Receives the changes and counts on the delivery thread.
+     */
+    interface Delivery {
+        void deliver(StateChange change) throws Exception;
+
+        void updateCounts(int pods, int failedPods, int deployments, int unavailableDeployments, long droppedChanges) throws Exception;
+    }
+
+    private final String _threadName;
+    private final ResourceCache _cache;
+    private final ResourceInformer<V1Pod> _pods;
+    private final ResourceInformer<V1Deployment> _deployments;
+    private final Delivery _delivery;
+    private final long _debounce;
+    private final int _queueSize;
+
+    private final Map<String, StateChange> _pending = new LinkedHashMap<>();
+    private long _droppedChanges;
+    private volatile boolean _running;
+    private Thread _thread;
+
+    StateChangeWatch(String threadName, ResourceCache cache, String namespace, String labelSelector, long debounce, int queueSize, Delivery delivery) {
+        this._threadName = threadName;
+        this._cache = cache;
+        this._debounce = Math.max(0L, debounce);
+        this._queueSize = Math.max(1, queueSize);
+        this._delivery = delivery;
+        this._pods = cache.watchPods("pod-events", namespace, labelSelector);
+        this._deployments = cache.watchDeployments("deployment-events", namespace, labelSelector);
+        this._pods.addListener(this::onPodChange);
+        this._deployments.addListener(this::onDeploymentChange);
+    }
+
+    synchronized void start() {
+        if (_running) {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(this::run, _threadName);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    void stop() {
+        synchronized (this) {
+            _running = false;
+            if (_thread != null) {
+                _thread.interrupt();
+                _thread = null;
+            }
+        }
+        _cache.stop(_pods);
+        _cache.stop(_deployments);
+    }
+
+    synchronized long getDroppedChanges() {
+        return _droppedChanges;
+    }
+
+    private void onPodChange(V1Pod oldPod, V1Pod newPod) {
+        if (oldPod == null || newPod == null) {
+            // only transitions of known pods are reported
+            return;
+        }
+        String namespace = newPod.getMetadata().getNamespace();
+        String name = newPod.getMetadata().getName();
+        String oldPhase = oldPod.getStatus() == null ? null : oldPod.getStatus().getPhase();
+        String newPhase = newPod.getStatus() == null ? null : newPod.getStatus().getPhase();
+        if (!Objects.equals(oldPhase, newPhase)) {
+            submit(new StateChange(Type.PHASE, namespace, name, null, String.valueOf(oldPhase), String.valueOf(newPhase), System.currentTimeMillis()));
+        }
+
+        List<V1ContainerStatus> newStatuses = newPod.getStatus() == null ? null : newPod.getStatus().getContainerStatuses();
+        if (newStatuses == null) {
+            return;
+        }
+        for (V1ContainerStatus status : newStatuses) {
+            int oldCount = restartCount(oldPod, status.getName());
+            int newCount = status.getRestartCount() == null ? 0 : status.getRestartCount();
+            if (newCount > oldCount) {
+                StateChange change = new StateChange(Type.RESTART, namespace, name, status.getName(),
+                        String.valueOf(oldCount), String.valueOf(newCount), System.currentTimeMillis());
+                if (status.getLastState() != null && status.getLastState().getTerminated() != null) {
+                    change.reason = status.getLastState().getTerminated().getReason();
+                }
+                submit(change);
+            }
+        }
+    }
+
+    private void onDeploymentChange(V1Deployment oldDeployment, V1Deployment newDeployment) {
+        if (oldDeployment == null || newDeployment == null) {
+            return;
+        }
+        boolean wasAvailable = isAvailable(oldDeployment);
+        boolean available = isAvailable(newDeployment);
+        if (wasAvailable != available) {
+            StateChange change = new StateChange(Type.AVAILABILITY, newDeployment.getMetadata().getNamespace(),
+                    newDeployment.getMetadata().getName(), null, wasAvailable ? AVAILABLE : UNAVAILABLE,
+                    available ? AVAILABLE : UNAVAILABLE, System.currentTimeMillis());
+            change.readyReplicas = readyReplicas(newDeployment);
+            change.desiredReplicas = desiredReplicas(newDeployment);
+            submit(change);
+        }
+    }
+
+    /**
+     * Queues a change, merging it with the pending change of the same object. A change waits at most ten debounce
+     * times, so an object that keeps flapping is still reported.
+     */
+    private synchronized void submit(StateChange change) {
+        String key = change.key();
+        StateChange pending = _pending.get(key);
+        long now = change.firstSeen;
+        if (pending != null) {
+            if (change.type != Type.RESTART && pending.from.equals(change.to)) {
+                // back to where it started before anyone was told
+                _pending.remove(key);
+                return;
+            }
+            pending.to = change.to;
+            pending.reason = change.reason == null ? pending.reason : change.reason;
+            pending.readyReplicas = change.readyReplicas;
+            pending.desiredReplicas = change.desiredReplicas;
+            pending.due = Math.min(now + _debounce, pending.firstSeen + 10 * _debounce);
+        } else {
+            if (_pending.size() >= _queueSize) {
+                Iterator<StateChange> eldest = _pending.values().iterator();
+                eldest.next();
+                eldest.remove();
+                _droppedChanges++;
+            }
+            change.due = now + _debounce;
+            _pending.put(key, change);
+        }
+        notifyAll();
+    }
+
+    private synchronized List<StateChange> awaitDueChanges(long maxWait) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long deadline = now + maxWait;
+        while (_running) {
+            long nextDue = deadline;
+            List<StateChange> due = new ArrayList<>();
+            for (Iterator<StateChange> it = _pending.values().iterator(); it.hasNext(); ) {
+                StateChange change = it.next();
+                if (change.due <= now) {
+                    due.add(change);
+                    it.remove();
+                } else {
+                    nextDue = Math.min(nextDue, change.due);
+                }
+            }
+            if (!due.isEmpty() || now >= deadline) {
+                return due;
+            }
+            wait(Math.max(1L, nextDue - now));
+            now = System.currentTimeMillis();
+        }
+        return new ArrayList<>();
+    }
+
+    private void run() {
+        long lastCounts = 0L;
+        while (_running) {
+            try {
+                List<StateChange> due = awaitDueChanges(COUNTS_INTERVAL);
+                for (StateChange change : due) {
+                    _delivery.deliver(change);
+                }
+                long now = System.currentTimeMillis();
+                if (!due.isEmpty() || now - lastCounts >= COUNTS_INTERVAL) {
+                    updateCounts();
+                    lastCounts = now;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                LOGGER.warn("Could not deliver Kubernetes state changes", ex);
+            }
+        }
+    }
+
+    private void updateCounts() throws Exception {
+        int failedPods = 0;
+        int pods = 0;
+        for (V1Pod pod : _pods.list(null)) {
+            pods++;
+            if (pod.getStatus() != null && "Failed".equals(pod.getStatus().getPhase())) {
+                failedPods++;
+            }
+        }
+        int deployments = 0;
+        int unavailableDeployments = 0;
+        for (V1Deployment deployment : _deployments.list(null)) {
+            deployments++;
+            if (!isAvailable(deployment)) {
+                unavailableDeployments++;
+            }
+        }
+        _delivery.updateCounts(pods, failedPods, deployments, unavailableDeployments, getDroppedChanges());
+    }
+
+    private static int restartCount(V1Pod pod, String container) {
+        if (pod.getStatus() == null || pod.getStatus().getContainerStatuses() == null) {
+            return 0;
+        }
+        for (V1ContainerStatus status : pod.getStatus().getContainerStatuses()) {
+            if (container.equals(status.getName())) {
+                return status.getRestartCount() == null ? 0 : status.getRestartCount();
+            }
+        }
+        return 0;
+    }
+
+    static boolean isAvailable(V1Deployment deployment) {
+        return availableReplicas(deployment) >= desiredReplicas(deployment);
+    }
+
+    static int desiredReplicas(V1Deployment deployment) {
+        return deployment.getSpec() == null || deployment.getSpec().getReplicas() == null ? 1 : deployment.getSpec().getReplicas();
+    }
+
+    static int readyReplicas(V1Deployment deployment) {
+        return deployment.getStatus() == null || deployment.getStatus().getReadyReplicas() == null ? 0 : deployment.getStatus().getReadyReplicas();
+    }
+
+    private static int availableReplicas(V1Deployment deployment) {
+        return deployment.getStatus() == null || deployment.getStatus().getAvailableReplicas() == null ? 0 : deployment.getStatus().getAvailableReplicas();
+    }
+}
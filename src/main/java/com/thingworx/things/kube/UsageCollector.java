@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import io.kubernetes.client.ApiClient;
+import io.kubernetes.client.ApiException;
+import io.kubernetes.client.Pair;
+import io.kubernetes.client.custom.Quantity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Polls the pod and node usage of the metrics.k8s.io API, served by metrics-server, into a pod and a node
+ * {@link UsageStore}. The lists are read token by token: only names, timestamps and usage quantities are kept, and the
+ * usage of the containers of a pod is summed. A pod is keyed namespace/name and a node by its name.
+ */
+final class UsageCollector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UsageCollector.class);
+    private static final String METRICS_PATH = "/apis/metrics.k8s.io/v1beta1/";
+    private static final String[] AUTH_NAMES = {"BearerToken"};
+
+    /**
+     * Receives every usage sample read from a list.
+     */
+    private interface SampleSink {
+        void add(String namespace, String name, long time, double cpu, double memory);
+    }
+
+    private final UsageStore _pods;
+    private final UsageStore _nodes;
+    private final int _timeoutSeconds;
+    private long _collections;
+
+    UsageCollector(UsageStore pods, UsageStore nodes, int timeoutSeconds) {
+        this._pods = pods;
+        this._nodes = nodes;
+        this._timeoutSeconds = timeoutSeconds;
+    }
+
+    UsageStore getPods() {
+        return _pods;
+    }
+
+    UsageStore getNodes() {
+        return _nodes;
+    }
+
+    /**
+     * Reads the usage of every pod and node once. Returns the means of the minutes that ended, pods first, for the
+     * caller to write to a ValueStream.
+     */
+    List<UsageStore.Sample> collect(ApiClient client) throws ApiException {
+        long start = System.currentTimeMillis();
+        // numbered rather than timed, two collections within the same millisecond must not look like one
+        long collection = ++_collections;
+        List<UsageStore.Sample> closedPods = new ArrayList<>();
+        int pods = read(client, "pods", (namespace, name, time, cpu, memory) -> {
+            UsageStore.Sample closed = _pods.add(key(namespace, name), time, cpu, memory, collection);
+            if (closed != null) {
+                closedPods.add(closed);
+            }
+        });
+        List<UsageStore.Sample> closedNodes = new ArrayList<>();
+        int nodes = read(client, "nodes", (namespace, name, time, cpu, memory) -> {
+            UsageStore.Sample closed = _nodes.add(name, time, cpu, memory, collection);
+            if (closed != null) {
+                closedNodes.add(closed);
+            }
+        });
+        _pods.expire(start);
+        _nodes.expire(start);
+        LOGGER.debug("Collected the usage of " + pods + " pods and " + nodes + " nodes in " + (System.currentTimeMillis() - start) + "ms");
+        closedPods.addAll(closedNodes);
+        return closedPods;
+    }
+
+    static String key(String namespace, String name) {
+        return namespace + "/" + name;
+    }
+
+    private int read(ApiClient client, String resource, SampleSink sink) throws ApiException {
+        List<Pair> query = new ArrayList<>(client.parameterToPair("timeoutSeconds", _timeoutSeconds));
+        Request request = client.buildRequest(METRICS_PATH + resource, "GET", query, new ArrayList<>(), null, new HashMap<>(),
+                new HashMap<>(), AUTH_NAMES, null);
+        Response response;
+        try {
+            response = client.getHttpClient().newCall(request).execute();
+        } catch (IOException ex) {
+            throw new ApiException(ex);
+        }
+        try (ResponseBody body = response.body()) {
+            if (!response.isSuccessful()) {
+                throw new ApiException(response.message(), response.code(), response.headers().toMultimap(), body.string());
+            }
+            return read(body.charStream(), sink);
+        } catch (IOException | RuntimeException ex) {
+            throw new ApiException("Could not decode the " + resource + " usage: " + ex.getMessage(), ex, response.code(), response.headers().toMultimap());
+        }
+    }
+
+    /**
+     * Reads a PodMetricsList or a NodeMetricsList and returns the number of items read.
+     */
+    private static int read(Reader in, SampleSink sink) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        int count = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("items".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readItem(reader, sink);
+                    count++;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return count;
+    }
+
+    private static void readItem(JsonReader reader, SampleSink sink) throws IOException {
+        String namespace = null;
+        String name = null;
+        long time = System.currentTimeMillis();
+        double[] usage = new double[2];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "metadata":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if ("name".equals(field)) {
+                            name = reader.nextString();
+                        } else if ("namespace".equals(field)) {
+                            namespace = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "timestamp":
+                    time = parseTime(reader.nextString(), time);
+                    break;
+                case "usage":
+                    readUsage(reader, usage);
+                    break;
+                case "containers":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("usage".equals(reader.nextName())) {
+                                readUsage(reader, usage);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (name != null) {
+            sink.add(namespace, name, time, usage[0], usage[1]);
+        }
+    }
+
+    /**
+     * Adds the cpu, in cores, and the memory, in bytes, of a usage object to usage.
+     */
+    private static void readUsage(JsonReader reader, double[] usage) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String resource = reader.nextName();
+            if ("cpu".equals(resource)) {
+                usage[0] += parseQuantity(reader.nextString());
+            } else if ("memory".equals(resource)) {
+                usage[1] += parseQuantity(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static double parseQuantity(String value) {
+        try {
+            return Quantity.fromString(value).getNumber().doubleValue();
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Ignoring usage quantity " + value, ex);
+            return 0;
+        }
+    }
+
+    private static long parseTime(String value, long defaultValue) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return defaultValue;
+        }
+    }
+}
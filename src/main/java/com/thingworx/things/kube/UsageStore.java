@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CPU and memory usage over time of a set of pods or nodes, kept in memory at three resolutions: the raw samples,
+ * and their means per minute and per quarter hour, each for its own retention.
+ * <p>
+ * Every series is a few fixed-size rings of primitive arrays, allocated once, so that memory is bounded by the number
+ * of series: about 16 bytes per raw sample and 8 bytes per minute or quarter hour kept. The means are kept as floats,
+ * about seven significant digits. The mean of the current minute and quarter hour is updated in place with every
+ * sample, so queries see it before the period ends. A series is dropped when its last sample is older than every
+ * retention, and, when the store is full, the series that has not been seen the longest makes room for a new one.
+ */
+final class UsageStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UsageStore.class);
+
+    enum Resolution {
+        RAW("raw", 0L), MINUTE("1m", 60000L), QUARTER_HOUR("15m", 900000L);
+
+        final String label;
+        final long step;
+
+        Resolution(String label, long step) {
+            this.label = label;
+            this.step = step;
+        }
+
+        /**
+         * Parses raw, 1m or 15m; returns null, the finest resolution that covers the queried range, for anything else.
+         */
+        static Resolution parse(String value) {
+            for (Resolution resolution : values()) {
+                if (value != null && resolution.label.equalsIgnoreCase(value.trim())) {
+                    return resolution;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The points of a series in a time range, oldest first. CPU is in cores and memory in bytes.
+     */
+    static final class Range {
+        final Resolution resolution;
+        final long[] times;
+        final double[] cpu;
+        final double[] memory;
+        final int size;
+
+        Range(Resolution resolution, long[] times, double[] cpu, double[] memory, int size) {
+            this.resolution = resolution;
+            this.times = times;
+            this.cpu = cpu;
+            this.memory = memory;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The mean of a minute that ended, with the name of its series: the name of the store and the key.
+     */
+    static final class Sample {
+        final String series;
+        final long time;
+        final double cpu;
+        final double memory;
+
+        Sample(String series, long time, double cpu, double memory) {
+            this.series = series;
+            this.time = time;
+            this.cpu = cpu;
+            this.memory = memory;
+        }
+    }
+
+    /**
+     * Means over fixed periods in a ring indexed by period number; periods without samples hold NaN.
+     */
+    private static final class Periods {
+        final long step;
+        final float[] cpu;
+        final float[] memory;
+        long first = -1;
+        long current = -1;
+        double cpuSum;
+        double memorySum;
+        int count;
+
+        Periods(long step, int capacity) {
+            this.step = step;
+            this.cpu = new float[capacity];
+            this.memory = new float[capacity];
+        }
+
+        /**
+         * Adds a sample; returns the number of the period it closed, or -1 when it did not close one.
+         */
+        long add(long time, double cpuValue, double memoryValue) {
+            long period = Math.floorDiv(time, step);
+            if (period < current) {
+                return -1;
+            }
+            long closed = -1;
+            if (period > current) {
+                closed = current;
+                if (current >= 0) {
+                    long gap = Math.min(period - current - 1, cpu.length);
+                    for (long skipped = period - gap; skipped < period; skipped++) {
+                        cpu[slot(skipped)] = Float.NaN;
+                        memory[slot(skipped)] = Float.NaN;
+                    }
+                } else {
+                    first = period;
+                }
+                current = period;
+                cpuSum = 0;
+                memorySum = 0;
+                count = 0;
+            }
+            cpuSum += cpuValue;
+            memorySum += memoryValue;
+            count++;
+            int slot = slot(period);
+            cpu[slot] = (float) (cpuSum / count);
+            memory[slot] = (float) (memorySum / count);
+            return closed;
+        }
+
+        /**
+         * True when the ring still holds the given time, or everything since the first sample.
+         */
+        boolean holds(long time) {
+            long oldest = current - cpu.length + 1;
+            return oldest <= first || oldest * step <= time;
+        }
+
+        int slot(long period) {
+            return (int) Math.floorMod(period, (long) cpu.length);
+        }
+    }
+
+    private static final class Series {
+        final long[] rawTimes;
+        final float[] rawCpu;
+        final float[] rawMemory;
+        int rawNext;
+        int rawSize;
+        final Periods minutes;
+        final Periods quarterHours;
+        long lastTime = Long.MIN_VALUE;
+        long lastSeen;
+
+        Series(int rawCapacity, int minuteCapacity, int quarterHourCapacity) {
+            rawTimes = new long[rawCapacity];
+            rawCpu = new float[rawCapacity];
+            rawMemory = new float[rawCapacity];
+            minutes = new Periods(Resolution.MINUTE.step, minuteCapacity);
+            quarterHours = new Periods(Resolution.QUARTER_HOUR.step, quarterHourCapacity);
+        }
+    }
+
+    private final Map<String, Series> _series = new ConcurrentHashMap<>();
+    private final String _name;
+    private final int _rawCapacity;
+    private final long _rawRetention;
+    private final int _minuteCapacity;
+    private final long _minuteRetention;
+    private final int _quarterHourCapacity;
+    private final long _quarterHourRetention;
+    private final int _maxSeries;
+    private long _droppedSeries;
+    private long _fullAt = -1;
+
+    /**
+     * Sizes the rings for the given retentions, with raw samples expected every interval milliseconds.
+     */
+    UsageStore(String name, long interval, long rawRetention, long minuteRetention, long quarterHourRetention, int maxSeries) {
+        this._name = name;
+        this._rawRetention = rawRetention;
+        this._rawCapacity = capacity(rawRetention, interval);
+        this._minuteRetention = minuteRetention;
+        this._minuteCapacity = capacity(minuteRetention, Resolution.MINUTE.step);
+        this._quarterHourRetention = quarterHourRetention;
+        this._quarterHourCapacity = capacity(quarterHourRetention, Resolution.QUARTER_HOUR.step);
+        this._maxSeries = Math.max(1, maxSeries);
+    }
+
+    /**
+     * Adds a sample of a series seen by the collection numbered seenAt, a number that grows with every collection.
+     * Samples not newer than the last one of the series, which the metrics API returns until it scrapes again, are
+     * ignored. Returns the mean of the minute the sample closed, or null.
+     */
+    Sample add(String key, long time, double cpu, double memory, long seenAt) {
+        Series series = _series.get(key);
+        if (series == null) {
+            // once every series has been seen by this collection, there is nothing left to evict until the next one
+            if (_series.size() >= _maxSeries && (seenAt == _fullAt || !evict(seenAt))) {
+                _fullAt = seenAt;
+                if (_droppedSeries++ % 1000 == 0) {
+                    LOGGER.warn("Usage store " + _name + " holds " + _maxSeries + " series, dropped " + _droppedSeries + " new series");
+                }
+                return null;
+            }
+            series = _series.computeIfAbsent(key, k -> new Series(_rawCapacity, _minuteCapacity, _quarterHourCapacity));
+        }
+        synchronized (series) {
+            series.lastSeen = seenAt;
+            if (time <= series.lastTime) {
+                return null;
+            }
+            series.lastTime = time;
+            int slot = series.rawNext;
+            series.rawTimes[slot] = time;
+            series.rawCpu[slot] = (float) cpu;
+            series.rawMemory[slot] = (float) memory;
+            series.rawNext = (slot + 1) % series.rawTimes.length;
+            series.rawSize = Math.min(series.rawSize + 1, series.rawTimes.length);
+            series.quarterHours.add(time, cpu, memory);
+            Periods minutes = series.minutes;
+            long closed = minutes.add(time, cpu, memory);
+            if (closed < 0) {
+                return null;
+            }
+            int closedSlot = minutes.slot(closed);
+            return new Sample(_name + "/" + key, closed * minutes.step, minutes.cpu[closedSlot], minutes.memory[closedSlot]);
+        }
+    }
+
+    /**
+     * Drops the series whose last sample is older than every retention.
+     */
+    void expire(long now) {
+        long before = now - Math.max(_rawRetention, Math.max(_minuteRetention, _quarterHourRetention));
+        Iterator<Series> series = _series.values().iterator();
+        while (series.hasNext()) {
+            if (series.next().lastTime < before) {
+                series.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the points of a series between from and to, both included, at the given resolution, or at the finest
+     * one that still holds from when resolution is null. Returns null when the series is unknown.
+     */
+    Range query(String key, long from, long to, Resolution resolution) {
+        Series series = _series.get(key);
+        if (series == null) {
+            return null;
+        }
+        synchronized (series) {
+            if (resolution == null) {
+                resolution = series.rawSize < series.rawTimes.length || oldestRaw(series) <= from ? Resolution.RAW
+                        : series.minutes.holds(from) ? Resolution.MINUTE : Resolution.QUARTER_HOUR;
+            }
+            return resolution == Resolution.RAW ? queryRaw(series, from, to) : queryPeriods(resolution,
+                    resolution == Resolution.MINUTE ? series.minutes : series.quarterHours, from, to);
+        }
+    }
+
+    int size() {
+        return _series.size();
+    }
+
+    private static Range queryRaw(Series series, long from, long to) {
+        int capacity = series.rawTimes.length;
+        long[] times = new long[series.rawSize];
+        double[] cpu = new double[series.rawSize];
+        double[] memory = new double[series.rawSize];
+        int size = 0;
+        for (int i = 0; i < series.rawSize; i++) {
+            int slot = (series.rawNext - series.rawSize + i + capacity) % capacity;
+            long time = series.rawTimes[slot];
+            if (time >= from && time <= to) {
+                times[size] = time;
+                cpu[size] = series.rawCpu[slot];
+                memory[size] = series.rawMemory[slot];
+                size++;
+            }
+        }
+        return new Range(Resolution.RAW, times, cpu, memory, size);
+    }
+
+    private static Range queryPeriods(Resolution resolution, Periods periods, long from, long to) {
+        if (periods.current < 0) {
+            return new Range(resolution, new long[0], new double[0], new double[0], 0);
+        }
+        long first = Math.max(Math.max(periods.current - periods.cpu.length + 1, periods.first), Math.floorDiv(from, periods.step));
+        long last = Math.min(periods.current, Math.floorDiv(to, periods.step));
+        int length = (int) Math.max(0, last - first + 1);
+        long[] times = new long[length];
+        double[] cpu = new double[length];
+        double[] memory = new double[length];
+        int size = 0;
+        for (long period = first; period <= last; period++) {
+            int slot = periods.slot(period);
+            if (!Float.isNaN(periods.cpu[slot])) {
+                times[size] = period * periods.step;
+                cpu[size] = periods.cpu[slot];
+                memory[size] = periods.memory[slot];
+                size++;
+            }
+        }
+        return new Range(resolution, times, cpu, memory, size);
+    }
+
+    private static long oldestRaw(Series series) {
+        int capacity = series.rawTimes.length;
+        return series.rawTimes[(series.rawNext - series.rawSize + capacity) % capacity];
+    }
+
+    /**
+     * Removes the series not seen by the current collection that was seen the longest ago. Returns false when every
+     * series was seen by it.
+     */
+    private boolean evict(long seenAt) {
+        String oldest = null;
+        long oldestSeen = seenAt;
+        for (Map.Entry<String, Series> entry : _series.entrySet()) {
+            if (entry.getValue().lastSeen < oldestSeen) {
+                oldest = entry.getKey();
+                oldestSeen = entry.getValue().lastSeen;
+            }
+        }
+        return oldest != null && _series.remove(oldest) != null;
+    }
+
+    private static int capacity(long retention, long step) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (retention + step - 1) / Math.max(1, step)));
+    }
+}
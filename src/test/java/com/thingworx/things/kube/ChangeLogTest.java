@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1Pod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds pod changes to a change log the way the informer does, and checks the changes it answers for a sync token.
+ */
+public class ChangeLogTest {
+    // the objects the cache holds, by namespace/name
+    private final Map<String, V1Pod> _cache = new HashMap<>();
+    private ChangeLog<V1Pod> _log;
+    private int _version;
+
+    @Before
+    public void setUp() {
+        _log = newLog(10);
+    }
+
+    @Test
+    public void answersNothingNewForTheCurrentToken() {
+        add("a", "p1");
+        String token = _log.token();
+        ChangeLog.Changes<V1Pod> changes = _log.since(token, null);
+        assertNotNull(changes);
+        assertTrue(changes.changes.isEmpty());
+        assertEquals(token, changes.token);
+    }
+
+    @Test
+    public void returnsTheChangesSinceAToken() {
+        V1Pod kept = add("a", "p1");
+        V1Pod deleted = add("a", "p2");
+        String token = _log.token();
+        V1Pod added = add("b", "p3");
+        V1Pod modified = modify(kept);
+        delete(deleted);
+
+        ChangeLog.Changes<V1Pod> changes = _log.since(token, null);
+        assertEquals(3, changes.changes.size());
+        assertChange(changes.changes.get(0), ChangeLog.ChangeType.ADDED, added);
+        assertChange(changes.changes.get(1), ChangeLog.ChangeType.MODIFIED, modified);
+        assertChange(changes.changes.get(2), ChangeLog.ChangeType.DELETED, deleted);
+        assertEquals(_log.token(), changes.token);
+
+        ChangeLog.Changes<V1Pod> namespace = _log.since(token, "b");
+        assertEquals(1, namespace.changes.size());
+        assertChange(namespace.changes.get(0), ChangeLog.ChangeType.ADDED, added);
+    }
+
+    @Test
+    public void foldsTheChangesOfOneObject() {
+        V1Pod modifiedTwice = add("a", "p1");
+        V1Pod deletedAfterChange = add("a", "p2");
+        V1Pod replaced = add("a", "p3");
+        String token = _log.token();
+
+        // added and deleted since the token: the caller never saw it
+        delete(add("a", "p4"));
+        // added and modified: still new to the caller, with its latest version
+        V1Pod addedThenModified = modify(add("a", "p5"));
+        modifiedTwice = modify(modify(modifiedTwice));
+        deletedAfterChange = modify(deletedAfterChange);
+        delete(deletedAfterChange);
+        // deleted and added again: the caller holds an older version
+        delete(replaced);
+        replaced = add("a", "p3");
+
+        ChangeLog.Changes<V1Pod> changes = _log.since(token, null);
+        assertEquals(4, changes.changes.size());
+        assertChange(changes.changes.get(0), ChangeLog.ChangeType.ADDED, addedThenModified);
+        assertChange(changes.changes.get(1), ChangeLog.ChangeType.MODIFIED, modifiedTwice);
+        assertChange(changes.changes.get(2), ChangeLog.ChangeType.DELETED, deletedAfterChange);
+        assertChange(changes.changes.get(3), ChangeLog.ChangeType.MODIFIED, replaced);
+    }
+
+    @Test
+    public void skipsObjectsDeletedAfterTheBatch() {
+        String token = _log.token();
+        V1Pod pod = add("a", "p1");
+        // the cache already dropped the object, its deletion is not in the log yet
+        _cache.remove("a/p1");
+        assertTrue(_log.since(token, null).changes.isEmpty());
+        delete(pod);
+        assertTrue(_log.since(token, null).changes.isEmpty());
+    }
+
+    @Test
+    public void rejectsTokensOlderThanTheOldestChangeKept() {
+        _log = newLog(3);
+        String oldest = _log.token();
+        add("a", "p1");
+        String kept = _log.token();
+        add("a", "p2");
+        add("a", "p3");
+        assertNotNull(_log.since(oldest, null));
+
+        // the log holds 3 changes: the first one goes, and with it the tokens before it
+        add("a", "p4");
+        assertEquals(3, _log.size());
+        assertNull(_log.since(oldest, null));
+        assertEquals(3, _log.since(kept, null).changes.size());
+
+        _log.setCapacity(1);
+        assertEquals(1, _log.size());
+        assertNull(_log.since(kept, null));
+        String last = _log.token();
+        add("a", "p5");
+        assertEquals(1, _log.since(last, null).changes.size());
+    }
+
+    @Test
+    public void rejectsTokensOfAnotherLog() {
+        add("a", "p1");
+        String token = _log.token();
+        ChangeLog<V1Pod> restarted = newLog(10);
+        restarted.onChange(null, _cache.get("a/p1"));
+        assertNotEquals(token, restarted.token());
+        assertNull(restarted.since(token, null));
+
+        String epoch = token.substring(0, token.lastIndexOf(':'));
+        assertNull(_log.since(epoch + ":99", null));
+        assertNull(_log.since(epoch + ":x", null));
+        assertNull(_log.since("1", null));
+        assertNull(_log.since("", null));
+        assertNull(_log.since(null, null));
+    }
+
+    private ChangeLog<V1Pod> newLog(int capacity) {
+        ResourceInformer<V1Pod> informer = new ResourceInformer<V1Pod>("pods", null, null, V1Pod::getMetadata) {
+            @Override
+            V1Pod get(String namespace, String name) {
+                return _cache.get(namespace + "/" + name);
+            }
+        };
+        return new ChangeLog<>(informer, V1Pod::getMetadata, capacity);
+    }
+
+    private V1Pod add(String namespace, String name) {
+        V1Pod pod = pod(namespace, name);
+        _cache.put(namespace + "/" + name, pod);
+        _log.onChange(null, pod);
+        return pod;
+    }
+
+    private V1Pod modify(V1Pod pod) {
+        V1Pod modified = pod(pod.getMetadata().getNamespace(), pod.getMetadata().getName());
+        _cache.put(pod.getMetadata().getNamespace() + "/" + pod.getMetadata().getName(), modified);
+        _log.onChange(pod, modified);
+        return modified;
+    }
+
+    private void delete(V1Pod pod) {
+        _cache.remove(pod.getMetadata().getNamespace() + "/" + pod.getMetadata().getName());
+        _log.onChange(pod, null);
+    }
+
+    private V1Pod pod(String namespace, String name) {
+        return new V1Pod().metadata(new V1ObjectMeta().namespace(namespace).name(name).resourceVersion(Integer.toString(++_version)));
+    }
+
+    private static void assertChange(ChangeLog.Change<V1Pod> change, ChangeLog.ChangeType type, V1Pod object) {
+        assertEquals(type, change.type);
+        assertSame(object, change.object);
+    }
+}
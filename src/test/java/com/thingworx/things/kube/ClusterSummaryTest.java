@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.custom.Quantity;
+import io.kubernetes.client.models.V1Container;
+import io.kubernetes.client.models.V1ContainerStatus;
+import io.kubernetes.client.models.V1Deployment;
+import io.kubernetes.client.models.V1DeploymentSpec;
+import io.kubernetes.client.models.V1DeploymentStatus;
+import io.kubernetes.client.models.V1Node;
+import io.kubernetes.client.models.V1NodeCondition;
+import io.kubernetes.client.models.V1NodeStatus;
+import io.kubernetes.client.models.V1ObjectMeta;
+import io.kubernetes.client.models.V1Pod;
+import io.kubernetes.client.models.V1PodSpec;
+import io.kubernetes.client.models.V1PodStatus;
+import io.kubernetes.client.models.V1ResourceRequirements;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the summary kept up to date change by change equals the summary counted from scratch from the objects
+ * left.
+ */
+public class ClusterSummaryTest {
+    private static final String[] PHASES = {"Pending", "Running", "Running", "Succeeded", "Failed"};
+
+    private final Map<String, V1Pod> _pods = new LinkedHashMap<>();
+    private final Map<String, V1Node> _nodes = new LinkedHashMap<>();
+    private final Map<String, V1Deployment> _deployments = new LinkedHashMap<>();
+    private final ClusterSummary _summary = new ClusterSummary();
+    private final Random _random = new Random(42);
+
+    @Test
+    public void countsAPodOnItsNode() {
+        change(_summary.nodeListener, _nodes, "n0", node("n0", true));
+        change(_summary.podListener, _pods, "ns/p0", pod("ns", "p0", "n0", "Running", 2));
+        change(_summary.podListener, _pods, "ns/p1", pod("ns", "p1", "n0", "Succeeded", 0));
+
+        Map<String, Double> rows = values(_summary.rows(null, 10, true));
+        assertEquals(2.0, rows.get("cluster//pods"), 0);
+        assertEquals(1.0, rows.get("cluster//readyNodes"), 0);
+        // a Succeeded pod no longer holds its requests
+        assertEquals(0.35, rows.get("cluster//cpuRequested"), 1e-9);
+        assertEquals(2.0 * 64 * 1024 * 1024, rows.get("node/n0/memoryRequested"), 0);
+        assertEquals(2.0, rows.get("node/n0/pods"), 0);
+        assertEquals(1.0, rows.get("phase/Succeeded/pods"), 0);
+        assertEquals(2.0, rows.get("restarts/ns/p0/restarts"), 0);
+
+        // the node goes first: its pods still count for it, without allocatable
+        change(_summary.nodeListener, _nodes, "n0", null);
+        rows = values(_summary.rows(null, 10, true));
+        assertEquals(0.0, rows.get("cluster//nodes"), 0);
+        assertEquals(2.0, rows.get("node/n0/pods"), 0);
+        assertEquals(0.0, rows.get("node/n0/cpuAllocatable"), 0);
+
+        change(_summary.podListener, _pods, "ns/p0", null);
+        change(_summary.podListener, _pods, "ns/p1", null);
+        assertEquals(recount(), describe(_summary.rows(null, 10, true)));
+        assertNull(values(_summary.rows(null, 10, true)).get("node/n0/pods"));
+    }
+
+    @Test
+    public void keepsTheTotalsOfARecount() {
+        for (int i = 0; i < 5000; i++) {
+            int kind = _random.nextInt(10);
+            if (kind < 7) {
+                String namespace = "ns" + _random.nextInt(3);
+                String name = "p" + _random.nextInt(40);
+                V1Pod pod = _pods.containsKey(namespace + "/" + name) && _random.nextInt(4) == 0 ? null
+                        : pod(namespace, name, _random.nextInt(6) == 0 ? null : "n" + _random.nextInt(5),
+                        PHASES[_random.nextInt(PHASES.length)], _random.nextInt(4));
+                change(_summary.podListener, _pods, namespace + "/" + name, pod);
+            } else if (kind < 8) {
+                String name = "n" + _random.nextInt(5);
+                V1Node node = _nodes.containsKey(name) && _random.nextInt(3) == 0 ? null : node(name, _random.nextBoolean());
+                change(_summary.nodeListener, _nodes, name, node);
+            } else {
+                String name = "d" + _random.nextInt(8);
+                V1Deployment deployment = _deployments.containsKey(name) && _random.nextInt(4) == 0 ? null
+                        : deployment(name, _random.nextInt(4), _random.nextInt(4));
+                change(_summary.deploymentListener, _deployments, name, deployment);
+            }
+            if (i % 250 == 0) {
+                assertEquals("after change " + i, recount(), describe(_summary.rows(null, 100, true)));
+            }
+        }
+        assertEquals(recount(), describe(_summary.rows(null, 100, true)));
+    }
+
+    /**
+     * Notifies a change the way the informer does: old object null when added, new object null when deleted.
+     */
+    private static <T> void change(ResourceInformer.Listener<T> listener, Map<String, T> objects, String key, T object) {
+        T previous = object == null ? objects.remove(key) : objects.put(key, object);
+        if (previous != null || object != null) {
+            listener.onChange(previous, object);
+        }
+    }
+
+    private List<String> recount() {
+        ClusterSummary summary = new ClusterSummary();
+        for (V1Pod pod : _pods.values()) {
+            summary.podListener.onChange(null, pod);
+        }
+        for (V1Node node : _nodes.values()) {
+            summary.nodeListener.onChange(null, node);
+        }
+        for (V1Deployment deployment : _deployments.values()) {
+            summary.deploymentListener.onChange(null, deployment);
+        }
+        return describe(summary.rows(null, 100, true));
+    }
+
+    private static List<String> describe(List<ClusterSummary.Row> rows) {
+        List<String> described = new ArrayList<>(rows.size());
+        for (ClusterSummary.Row row : rows) {
+            described.add(row.section + "/" + row.name + "/" + row.metric + "=" + row.value);
+        }
+        return described;
+    }
+
+    private static Map<String, Double> values(List<ClusterSummary.Row> rows) {
+        Map<String, Double> values = new HashMap<>();
+        for (ClusterSummary.Row row : rows) {
+            values.put(row.section + "/" + row.name + "/" + row.metric, row.value);
+        }
+        return values;
+    }
+
+    private static V1Pod pod(String namespace, String name, String nodeName, String phase, int restarts) {
+        List<V1Container> containers = new ArrayList<>();
+        containers.add(container("100m", "64Mi"));
+        containers.add(container("250m", "64Mi"));
+        return new V1Pod()
+                .metadata(new V1ObjectMeta().namespace(namespace).name(name))
+                .spec(new V1PodSpec().nodeName(nodeName).containers(containers))
+                .status(new V1PodStatus().phase(phase)
+                        .containerStatuses(Collections.singletonList(new V1ContainerStatus().name("main").restartCount(restarts))));
+    }
+
+    private static V1Container container(String cpu, String memory) {
+        Map<String, Quantity> requests = new HashMap<>();
+        requests.put("cpu", Quantity.fromString(cpu));
+        requests.put("memory", Quantity.fromString(memory));
+        return new V1Container().name("main").resources(new V1ResourceRequirements().requests(requests));
+    }
+
+    private static V1Node node(String name, boolean ready) {
+        Map<String, Quantity> allocatable = new HashMap<>();
+        allocatable.put("cpu", Quantity.fromString("4"));
+        allocatable.put("memory", Quantity.fromString("16Gi"));
+        return new V1Node()
+                .metadata(new V1ObjectMeta().name(name))
+                .status(new V1NodeStatus().allocatable(allocatable)
+                        .conditions(Collections.singletonList(new V1NodeCondition().type("Ready").status(ready ? "True" : "False"))));
+    }
+
+    private static V1Deployment deployment(String name, int desired, int available) {
+        return new V1Deployment()
+                .metadata(new V1ObjectMeta().namespace("ns0").name(name))
+                .spec(new V1DeploymentSpec().replicas(desired))
+                .status(new V1DeploymentStatus().availableReplicas(available).readyReplicas(available));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that identical concurrent requests share one execution, and what the TTL keeps afterwards.
+ */
+public class RequestCoalescerTest {
+    private static final int CALLERS = 8;
+
+    private final ClientMetrics _metrics = new ClientMetrics();
+    private final ExecutorService _callers = Executors.newFixedThreadPool(CALLERS);
+    private final AtomicInteger _executions = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        _callers.shutdownNow();
+    }
+
+    @Test
+    public void sharesOneRequestBetweenConcurrentCallers() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(0, _metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        Object result = new Object();
+        List<Future<Object>> calls = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            calls.add(_callers.submit(() -> coalescer.execute("pods", () -> {
+                _executions.incrementAndGet();
+                await(release);
+                return result;
+            })));
+        }
+        // answer once every other caller has joined the request in flight
+        waitForCoalesced(CALLERS - 1);
+        release.countDown();
+        for (Future<Object> call : calls) {
+            assertSame(result, call.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, _executions.get());
+
+        // without TTL, the next call is a request of its own
+        coalescer.execute("pods", this::execution);
+        assertEquals(2, _executions.get());
+    }
+
+    @Test
+    public void keepsRequestsWithDifferentKeysApart() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(60000, _metrics);
+        Object first = coalescer.execute(RequestCoalescer.key("pods", "a", null), this::execution);
+        Object second = coalescer.execute(RequestCoalescer.key("pods", "b", null), this::execution);
+        Object third = coalescer.execute(RequestCoalescer.key("pods", null, "a"), this::execution);
+        assertEquals(3, _executions.get());
+        assertSame(first, coalescer.execute(RequestCoalescer.key("pods", "a", null), this::execution));
+        assertSame(second, coalescer.execute(RequestCoalescer.key("pods", "b", null), this::execution));
+        assertSame(third, coalescer.execute(RequestCoalescer.key("pods", null, "a"), this::execution));
+        assertEquals(3, _executions.get());
+    }
+
+    @Test
+    public void answersFromAResultUntilItsTtlHasPassed() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(200, _metrics);
+        Object first = coalescer.execute("pods", this::execution);
+        assertSame(first, coalescer.execute("pods", this::execution));
+        assertEquals(1, _executions.get());
+
+        Thread.sleep(300);
+        Object second = coalescer.execute("pods", this::execution);
+        assertEquals(2, _executions.get());
+        assertTrue(first != second);
+    }
+
+    @Test
+    public void sharesAFailureWithTheWaitingCallersOnly() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(60000, _metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Object>> calls = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            calls.add(_callers.submit(() -> coalescer.execute("pods", () -> {
+                _executions.incrementAndGet();
+                await(release);
+                throw new ApiException(500, "failed");
+            })));
+        }
+        waitForCoalesced(CALLERS - 1);
+        release.countDown();
+        for (Future<Object> call : calls) {
+            try {
+                call.get(10, TimeUnit.SECONDS);
+                fail("The failure was not shared");
+            } catch (ExecutionException ex) {
+                assertEquals(500, ((ApiException) ex.getCause()).getCode());
+            }
+        }
+        assertEquals(1, _executions.get());
+
+        // a failure is not kept for the TTL
+        coalescer.execute("pods", this::execution);
+        assertEquals(2, _executions.get());
+    }
+
+    private Object execution() {
+        _executions.incrementAndGet();
+        return new Object();
+    }
+
+    private void waitForCoalesced(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (coalesced() < count) {
+            if (System.nanoTime() > deadline) {
+                fail("Only " + coalesced() + " of " + count + " callers joined the request in flight");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private long coalesced() {
+        ClientMetrics.Stats stats = _metrics.getStats().get(ClientMetrics.HTTP);
+        return stats == null ? 0 : stats.coalesced.sum();
+    }
+
+    private static void await(CountDownLatch latch) throws ApiException {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            throw new ApiException(ex);
+        }
+    }
+}
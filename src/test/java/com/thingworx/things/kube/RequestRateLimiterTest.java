@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that requests beyond the burst wait for their token, and that a request that would wait too long fails.
+ */
+public class RequestRateLimiterTest {
+    private final ClientMetrics _metrics = new ClientMetrics();
+    private MockWebServer _server;
+
+    @Before
+    public void setUp() throws IOException {
+        _server = new MockWebServer();
+        _server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        _server.shutdown();
+    }
+
+    @Test
+    public void reservesTokensBeyondTheBurstAtTheRate() {
+        // 10 per second, a token every 100ms
+        RequestRateLimiter limiter = new RequestRateLimiter(10, 3, 10000, _metrics);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0L, limiter.reserve());
+        }
+        assertWait(100, limiter.reserve());
+        assertWait(200, limiter.reserve());
+        assertWait(300, limiter.reserve());
+    }
+
+    @Test
+    public void refusesWaitsLongerThanTheMaximum() throws InterruptedException {
+        RequestRateLimiter limiter = new RequestRateLimiter(10, 1, 150, _metrics);
+        assertEquals(0L, limiter.reserve());
+        assertWait(100, limiter.reserve());
+        assertEquals(-1L, limiter.reserve());
+        // the refused request took no token: a token later, the next one no longer waits too long
+        Thread.sleep(100);
+        long wait = limiter.reserve();
+        assertTrue("waited " + wait + "ns", wait >= 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void delaysRequestsBeyondTheBurst() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(new RequestRateLimiter(20, 2, 10000, _metrics));
+        long start = System.nanoTime();
+        for (int i = 0; i < 2; i++) {
+            get(client);
+        }
+        long burst = System.nanoTime() - start;
+        for (int i = 0; i < 4; i++) {
+            get(client);
+        }
+        long total = System.nanoTime() - start;
+        assertEquals(6, _server.getRequestCount());
+        // the burst passes at once, the next 4 requests wait 50ms each
+        assertTrue("burst took " + TimeUnit.NANOSECONDS.toMillis(burst) + "ms", burst < TimeUnit.MILLISECONDS.toNanos(150));
+        assertTrue("6 requests took " + TimeUnit.NANOSECONDS.toMillis(total) + "ms", total >= TimeUnit.MILLISECONDS.toNanos(190));
+        assertEquals(6, _metrics.getStats().get(ClientMetrics.HTTP).wait.getCount());
+    }
+
+    @Test
+    public void failsARequestThatWouldWaitTooLong() throws IOException {
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(new RequestRateLimiter(1, 1, 100, _metrics));
+        get(client);
+        try {
+            get(client);
+            fail("The request waited for the rate limit");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Client-side rate limit exceeded"));
+        }
+        assertEquals(1, _server.getRequestCount());
+    }
+
+    private void get(OkHttpClient client) throws IOException {
+        _server.enqueue(new MockResponse().setBody("{}"));
+        Response response = client.newCall(new Request.Builder().url(_server.url("/api/v1/pods")).build()).execute();
+        response.body().close();
+    }
+
+    private static void assertWait(long expectedMillis, long waitNanos) {
+        // the bucket refills during the test, a little less is owed
+        long millis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        assertTrue("waited " + millis + "ms instead of " + expectedMillis + "ms", millis <= expectedMillis && millis > expectedMillis - 50);
+    }
+}
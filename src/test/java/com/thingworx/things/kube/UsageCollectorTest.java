@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018.  PTC Inc. and/or Its Subsidiary Companies. All Rights Reserved.
+ * Copyright for PTC software products is with PTC Inc. and its subsidiary companies (collectively “PTC”), and their respective licensors. This software is provided under written license agreement, contains valuable trade secrets and proprietary information, and is protected by the copyright laws of the United States and other countries. It may not be copied or distributed in any form or medium, disclosed to third parties, or used in any manner not provided for in the software license agreement except with written prior approval from PTC.
+ *
+ */
+
+package com.thingworx.things.kube;
+
+import io.kubernetes.client.ApiClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Collects pod usage from the metrics.k8s.io API of the mock API server at chosen sample times, and checks what the
+ * usage stores keep and answer.
+ */
+public class UsageCollectorTest {
+    private static final long SECOND = 1000L;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long QUARTER_HOUR = 15 * MINUTE;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private MockKubeApiServer _server;
+    private ApiClient _client;
+    // the start of a quarter hour, recent enough for the stores not to expire the samples
+    private long _t0;
+
+    @Before
+    public void setUp() throws Exception {
+        _server = new MockKubeApiServer(3, 0, 0, 0, 0L);
+        _server.start();
+        _client = KubeClientFactory.createClient(_server.getConnectionSettings(2), new ClientMetrics());
+        _t0 = (System.currentTimeMillis() - 2 * 60 * MINUTE) / QUARTER_HOUR * QUARTER_HOUR;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        KubeClientFactory.closeClient(_client);
+        _server.close();
+    }
+
+    @Test
+    public void skipsSamplesNotNewerThanTheLastOne() throws Exception {
+        UsageCollector collector = collector(10 * MINUTE, 10);
+        collectAt(collector, _t0);
+        collectAt(collector, _t0);
+        assertEquals(1, raw(collector, 0).size);
+
+        collectAt(collector, _t0 + 30 * SECOND);
+        collectAt(collector, _t0 + 10 * SECOND);
+        UsageStore.Range range = raw(collector, 0);
+        assertEquals(2, range.size);
+        assertEquals(_t0, range.times[0]);
+        assertEquals(_t0 + 30 * SECOND, range.times[1]);
+    }
+
+    @Test
+    public void keepsMinuteAndQuarterHourMeans() throws Exception {
+        UsageCollector collector = collector(10 * MINUTE, 10);
+        for (long offset : new long[]{0, 20 * SECOND, 40 * SECOND}) {
+            assertTrue(collectAt(collector, _t0 + offset).isEmpty());
+        }
+        List<UsageStore.Sample> closed = collectAt(collector, _t0 + MINUTE);
+        // the minute after is empty, the gap must not show up as a point
+        collectAt(collector, _t0 + 3 * MINUTE);
+
+        UsageStore.Range raw = raw(collector, 0);
+        assertEquals(5, raw.size);
+
+        UsageStore.Range minutes = collector.getPods().query(pod(0), _t0, _t0 + 3 * MINUTE, UsageStore.Resolution.MINUTE);
+        assertEquals(UsageStore.Resolution.MINUTE, minutes.resolution);
+        assertEquals(3, minutes.size);
+        assertEquals(_t0, minutes.times[0]);
+        assertEquals(_t0 + MINUTE, minutes.times[1]);
+        assertEquals(_t0 + 3 * MINUTE, minutes.times[2]);
+        assertClose(mean(raw.cpu, 0, 3), minutes.cpu[0]);
+        assertClose(mean(raw.memory, 0, 3), minutes.memory[0]);
+        assertClose(raw.cpu[3], minutes.cpu[1]);
+        assertClose(raw.cpu[4], minutes.cpu[2]);
+        for (int i = 0; i < minutes.size; i++) {
+            assertFalse(Double.isNaN(minutes.cpu[i]) || Double.isNaN(minutes.memory[i]));
+        }
+
+        UsageStore.Range quarterHours = collector.getPods().query(pod(0), _t0, _t0 + 3 * MINUTE, UsageStore.Resolution.QUARTER_HOUR);
+        assertEquals(1, quarterHours.size);
+        assertEquals(_t0, quarterHours.times[0]);
+        assertClose(mean(raw.cpu, 0, 5), quarterHours.cpu[0]);
+        assertClose(mean(raw.memory, 0, 5), quarterHours.memory[0]);
+
+        // the first sample of a minute closes the previous one, for every pod and node
+        assertEquals(3 + 3, closed.size());
+        UsageStore.Sample first = closed.get(0);
+        assertEquals("pods/" + pod(0), first.series);
+        assertEquals(_t0, first.time);
+        assertClose(minutes.cpu[0], first.cpu);
+        assertClose(minutes.memory[0], first.memory);
+    }
+
+    @Test
+    public void picksTheFinestResolutionHoldingTheStart() throws Exception {
+        // 4 raw samples and 10 minutes
+        UsageCollector collector = collector(2 * MINUTE, 10);
+        collectAt(collector, _t0);
+        assertEquals(UsageStore.Resolution.RAW, auto(collector, _t0 - DAY).resolution);
+
+        for (long time = _t0 + 30 * SECOND; time <= _t0 + QUARTER_HOUR; time += 30 * SECOND) {
+            collectAt(collector, time);
+        }
+        assertEquals(UsageStore.Resolution.RAW, auto(collector, _t0 + QUARTER_HOUR - MINUTE).resolution);
+        assertEquals(UsageStore.Resolution.MINUTE, auto(collector, _t0 + 10 * MINUTE).resolution);
+        assertEquals(UsageStore.Resolution.QUARTER_HOUR, auto(collector, _t0).resolution);
+        assertEquals(3, auto(collector, _t0 + QUARTER_HOUR - MINUTE).size);
+    }
+
+    @Test
+    public void evictsTheSeriesNotSeenWhenFull() throws Exception {
+        UsageCollector collector = collector(10 * MINUTE, 3);
+        _server.setMetricsPods(0, 3);
+        collectAt(collector, _t0);
+        assertEquals(3, collector.getPods().size());
+
+        // pods 0 and 1 are gone, 3 and 4 take their place
+        _server.setMetricsPods(2, 3);
+        collectAt(collector, _t0 + 30 * SECOND);
+        assertEquals(3, collector.getPods().size());
+        assertNull(raw(collector, 0));
+        assertNull(raw(collector, 1));
+        assertEquals(2, raw(collector, 2).size);
+        assertNotNull(raw(collector, 3));
+        assertNotNull(raw(collector, 4));
+
+        // four new pods: three replace the pods not seen, the last one finds no room
+        _server.setMetricsPods(10, 4);
+        collectAt(collector, _t0 + MINUTE);
+        assertEquals(3, collector.getPods().size());
+        assertNotNull(raw(collector, 10));
+        assertNotNull(raw(collector, 11));
+        assertNotNull(raw(collector, 12));
+        assertNull(raw(collector, 13));
+    }
+
+    private List<UsageStore.Sample> collectAt(UsageCollector collector, long time) throws Exception {
+        _server.setMetricsTime(time);
+        return collector.collect(_client);
+    }
+
+    private UsageStore.Range raw(UsageCollector collector, int index) {
+        return collector.getPods().query(pod(index), _t0 - DAY, _t0 + DAY, UsageStore.Resolution.RAW);
+    }
+
+    private UsageStore.Range auto(UsageCollector collector, long from) {
+        return collector.getPods().query(pod(0), from, _t0 + DAY, null);
+    }
+
+    private static UsageCollector collector(long rawRetention, int maxSeries) {
+        return new UsageCollector(new UsageStore("pods", 30 * SECOND, rawRetention, 10 * MINUTE, DAY, maxSeries),
+                new UsageStore("nodes", 30 * SECOND, rawRetention, 10 * MINUTE, DAY, maxSeries), 10);
+    }
+
+    private static String pod(int index) {
+        return UsageCollector.key(SyntheticResources.NAMESPACE, String.format("app-%d-%08d", index % 50, index));
+    }
+
+    private static double mean(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum / (to - from);
+    }
+
+    /**
+     * Means are kept as floats.
+     */
+    private static void assertClose(double expected, double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * 1e-6);
+    }
+}